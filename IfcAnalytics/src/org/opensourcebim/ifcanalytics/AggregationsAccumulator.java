@@ -0,0 +1,487 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.utils.AreaUnit;
+import org.bimserver.utils.IfcUtils;
+import org.bimserver.utils.VolumeUnit;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+public class AggregationsAccumulator implements ProductAccumulator<AggregationsAccumulator> {
+
+	// Two sided 95% confidence
+	private static final double Z = 1.96;
+
+	/**
+	 * Count, sum and sum of squares of the sampled values of one figure
+	 */
+	private static class Moments {
+		private long count;
+		private double sum;
+		private double sumOfSquares;
+
+		private void add(double value) {
+			count++;
+			sum += value;
+			sumOfSquares += value * value;
+		}
+
+		private void merge(Moments other) {
+			count += other.count;
+			sum += other.sum;
+			sumOfSquares += other.sumOfSquares;
+		}
+
+		private double mean() {
+			return count == 0 ? 0 : sum / count;
+		}
+
+		/**
+		 * @return Variance of the estimated total of a stratum of populationSize, with finite population correction
+		 */
+		private double varianceOfTotal(int populationSize) {
+			if (count < 2 || count >= populationSize) {
+				return 0;
+			}
+			double sampleVariance = Math.max(0, (sumOfSquares - sum * sum / count) / (count - 1));
+			return (double) populationSize * populationSize * sampleVariance / count * (1 - (double) count / populationSize);
+		}
+	}
+
+	/**
+	 * The sampled values of one type, only kept in sampling mode
+	 */
+	private static class Estimates {
+		private final Moments triangles = new Moments();
+		private final Moments psets = new Moments();
+		private final Moments properties = new Moments();
+		private final Moments relations = new Moments();
+
+		private void merge(Estimates other) {
+			triangles.merge(other.triangles);
+			psets.merge(other.psets);
+			properties.merge(other.properties);
+			relations.merge(other.relations);
+		}
+
+		private void write(JsonGenerator generator, int populationSize) throws IOException {
+			generator.writeObjectFieldStart("estimates");
+			generator.writeNumberField("sampleSize", triangles.count);
+			writeAverage(generator, "averageNumberOfTriangles", triangles, populationSize);
+			writeAverage(generator, "averageNumberOfPsets", psets, populationSize);
+			writeAverage(generator, "averageNumberOfProperties", properties, populationSize);
+			writeAverage(generator, "averageNumberOfRelations", relations, populationSize);
+			generator.writeEndObject();
+		}
+
+		private static void writeAverage(JsonGenerator generator, String fieldName, Moments moments, int populationSize) throws IOException {
+			writeInterval(generator, fieldName, moments.mean(), Z * Math.sqrt(moments.varianceOfTotal(populationSize)) / populationSize);
+		}
+	}
+
+	private static class Distributions {
+		private final QuantileSketch triangles = new QuantileSketch();
+		private final QuantileSketch volume = new QuantileSketch();
+		private final QuantileSketch trianglesPerM3 = new QuantileSketch();
+		private final QuantileSketch properties = new QuantileSketch();
+
+		private void add(GeometryInfo geometry, int primitiveCount, double volume, int nrOfProperties) {
+			if (geometry != null) {
+				triangles.add(primitiveCount);
+				this.volume.add(volume);
+				if (primitiveCount != 0 && volume != 0) {
+					trianglesPerM3.add(primitiveCount / volume);
+				}
+			}
+			properties.add(nrOfProperties);
+		}
+
+		private void merge(Distributions other) {
+			triangles.merge(other.triangles);
+			volume.merge(other.volume);
+			trianglesPerM3.merge(other.trianglesPerM3);
+			properties.merge(other.properties);
+		}
+
+		private void write(JsonGenerator generator) throws IOException {
+			generator.writeObjectFieldStart("distributions");
+			write(generator, "triangles", triangles);
+			write(generator, "volumeM3", volume);
+			write(generator, "trianglesPerM3", trianglesPerM3);
+			write(generator, "properties", properties);
+			generator.writeEndObject();
+		}
+
+		private static void write(JsonGenerator generator, String fieldName, QuantileSketch sketch) throws IOException {
+			if (sketch.getCount() > 0) {
+				generator.writeFieldName(fieldName);
+				sketch.write(generator);
+			}
+		}
+	}
+
+	private static class TypeAggregation {
+		private Distributions distributions;
+		private Estimates estimates;
+		private int nrOfObjects;
+		private int nrOfTriangles;
+		private int nrOfPsets;
+		private int nrOfProperties;
+		private int nrOfRelations;
+
+		private void merge(TypeAggregation other) {
+			nrOfObjects += other.nrOfObjects;
+			nrOfTriangles += other.nrOfTriangles;
+			nrOfPsets += other.nrOfPsets;
+			nrOfProperties += other.nrOfProperties;
+			nrOfRelations += other.nrOfRelations;
+			if (distributions != null) {
+				distributions.merge(other.distributions);
+			}
+			if (estimates != null) {
+				estimates.merge(other.estimates);
+			}
+		}
+
+		private int getNrOfSamples() {
+			return estimates == null ? nrOfObjects : (int) estimates.triangles.count;
+		}
+
+		/**
+		 * @return The estimated total over all objects of the type of a figure summed over the sample
+		 */
+		private double total(int sum) {
+			return getNrOfSamples() == 0 ? 0 : (double) sum * nrOfObjects / getNrOfSamples();
+		}
+	}
+
+	private final AnalysisContext context;
+	private final IfcModelInterface model;
+	private final FeatureCache featureCache;
+	private final AreaCache areaCache;
+	private final PropertyIndex propertyIndex;
+	private final ProductSample sample;
+	private final AreaUnit modelAreaUnit;
+	private final VolumeUnit modelVolumeUnit;
+	private final int topListSize;
+
+	private final Map<EClass, TypeAggregation> perType = new LinkedHashMap<>();
+	private final TopObjects mostComplex;
+	private final TopObjects mostProperties;
+	private final Distributions distributions;
+	private final DoubleList spaceM2 = new DoubleList();
+	private final DoubleList spaceM3 = new DoubleList();
+	private int totalNrOfTriangles = 0;
+	private int totalNrOfObjects = 0;
+
+	/**
+	 * @param propertyIndex Needs to cover the sampled products in sampling mode
+	 */
+	public AggregationsAccumulator(AnalysisContext context, PropertyIndex propertyIndex) {
+		this.context = context;
+		this.propertyIndex = propertyIndex;
+		this.sample = context.getSample();
+		this.model = context.getModel();
+		this.featureCache = context.getFeatureCache();
+		this.areaCache = context.getAreaCache();
+		this.modelAreaUnit = context.getAreaUnit();
+		this.modelVolumeUnit = context.getVolumeUnit();
+		this.topListSize = context.getTopListSize();
+		this.mostComplex = new TopObjects(topListSize);
+		this.mostProperties = new TopObjects(topListSize);
+		this.distributions = context.hasDistributions() ? new Distributions() : null;
+	}
+
+	@Override
+	public boolean needsGeometry(IdEObject product) {
+		return sample == null || sample.contains(product);
+	}
+
+	@Override
+	public void visit(IdEObject product, GeometryInfo geometry) {
+		EClass ifcProductClass = product.eClass();
+		TypeAggregation typeAggregation = perType.get(ifcProductClass);
+		if (typeAggregation == null) {
+			typeAggregation = new TypeAggregation();
+			if (distributions != null) {
+				typeAggregation.distributions = new Distributions();
+			}
+			if (sample != null) {
+				typeAggregation.estimates = new Estimates();
+			}
+			perType.put(ifcProductClass, typeAggregation);
+		}
+		long sequence = totalNrOfObjects;
+		// The number of objects stays exact, the rest only looks at the sample
+		typeAggregation.nrOfObjects++;
+		totalNrOfObjects++;
+		if (sample != null && !sample.contains(product)) {
+			return;
+		}
+
+		int primitiveCount = 0;
+		double volume = 0;
+		if (geometry != null) {
+			typeAggregation.nrOfTriangles += geometry.getPrimitiveCount();
+			totalNrOfTriangles += geometry.getPrimitiveCount();
+
+			primitiveCount = geometry.getPrimitiveCount();
+			volume = IfcAnalyticsService.DEFAULT_VOLUME_UNIT.convert(geometry.getVolume(), modelVolumeUnit);
+
+			if (ifcProductClass.getName().equals("IfcSpace")) {
+				spaceM2.add(IfcAnalyticsService.DEFAULT_AREA_UNIT.convert(areaCache.getArea(geometry), modelAreaUnit));
+				spaceM3.add(IfcAnalyticsService.DEFAULT_VOLUME_UNIT.convert(geometry.getVolume(), modelVolumeUnit));
+			}
+		}
+		int nrOfPsets = propertyIndex.getNrOfPsets(product.getOid());
+		typeAggregation.nrOfPsets += nrOfPsets;
+		int nrOfProperties = propertyIndex.getNrOfProperties(product.getOid());
+		typeAggregation.nrOfProperties += nrOfProperties;
+		int nrOfRelations = IfcUtils.getNrOfRelations(product);
+		typeAggregation.nrOfRelations += nrOfRelations;
+		if (typeAggregation.estimates != null) {
+			typeAggregation.estimates.triangles.add(primitiveCount);
+			typeAggregation.estimates.psets.add(nrOfPsets);
+			typeAggregation.estimates.properties.add(nrOfProperties);
+			typeAggregation.estimates.relations.add(nrOfRelations);
+		}
+
+		if (distributions != null) {
+			distributions.add(geometry, primitiveCount, volume, nrOfProperties);
+			typeAggregation.distributions.add(geometry, primitiveCount, volume, nrOfProperties);
+		}
+
+		mostComplex.offer(getTrianglesPerVolume(primitiveCount, volume), sequence, product.getOid(), primitiveCount, volume, nrOfProperties);
+		mostProperties.offer(nrOfProperties, sequence, product.getOid(), primitiveCount, volume, nrOfProperties);
+	}
+
+	private static void writeInterval(JsonGenerator generator, String fieldName, double estimate, double halfWidth) throws IOException {
+		generator.writeObjectFieldStart(fieldName);
+		generator.writeNumberField("estimate", estimate);
+		generator.writeNumberField("low", estimate - halfWidth);
+		generator.writeNumberField("high", estimate + halfWidth);
+		generator.writeEndObject();
+	}
+
+	private static float getTrianglesPerVolume(int primitiveCount, double volume) {
+		if (volume == 0 || primitiveCount == 0) {
+			return 0;
+		}
+		return (float) (primitiveCount / volume);
+	}
+
+	@Override
+	public AggregationsAccumulator createPartition() {
+		return new AggregationsAccumulator(context, propertyIndex);
+	}
+
+	@Override
+	public void merge(AggregationsAccumulator partition) {
+		for (Map.Entry<EClass, TypeAggregation> entry : partition.perType.entrySet()) {
+			TypeAggregation typeAggregation = perType.get(entry.getKey());
+			if (typeAggregation == null) {
+				perType.put(entry.getKey(), entry.getValue());
+			} else {
+				typeAggregation.merge(entry.getValue());
+			}
+		}
+		// The partition numbered its objects from 0, place them behind the objects seen so far
+		mostComplex.merge(partition.mostComplex, totalNrOfObjects);
+		mostProperties.merge(partition.mostProperties, totalNrOfObjects);
+		spaceM2.addAll(partition.spaceM2);
+		spaceM3.addAll(partition.spaceM3);
+		totalNrOfTriangles += partition.totalNrOfTriangles;
+		totalNrOfObjects += partition.totalNrOfObjects;
+		if (distributions != null) {
+			distributions.merge(partition.distributions);
+		}
+	}
+
+	@Override
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		if (context.isSampling()) {
+			writeSampling(generator);
+		}
+		generator.writeObjectFieldStart("perType");
+
+		long totalNrOfProperties = 0;
+		long totalNrOfRelations = 0;
+		long totalNrOfPsets = 0;
+		// Only differs from the exact totals in sampling mode
+		double estimatedNrOfTriangles = 0;
+		double estimatedNrOfPsets = 0;
+		double estimatedNrOfProperties = 0;
+		double estimatedNrOfRelations = 0;
+		double totalSpaceM2 = spaceM2.sum();
+		double totalSpaceM3 = spaceM3.sum();
+		for (Map.Entry<EClass, TypeAggregation> entry : perType.entrySet()) {
+			TypeAggregation typeAggregation = entry.getValue();
+			int nrOfObjects = typeAggregation.nrOfObjects;
+			int nrOfSamples = Math.max(1, typeAggregation.getNrOfSamples());
+			generator.writeObjectFieldStart(entry.getKey().getName());
+			generator.writeNumberField("numberOfObjects", nrOfObjects);
+			if (typeAggregation.nrOfTriangles > 0) {
+				generator.writeNumberField("averageNumberOfTriangles", typeAggregation.nrOfTriangles / nrOfSamples);
+			}
+			generator.writeNumberField("averageNumberOfPsets", typeAggregation.nrOfPsets / nrOfSamples);
+			generator.writeNumberField("averageNumberOfProperties", typeAggregation.nrOfProperties / nrOfSamples);
+			generator.writeNumberField("averageNumberOfRelations", typeAggregation.nrOfRelations / nrOfSamples);
+			if (typeAggregation.distributions != null) {
+				typeAggregation.distributions.write(generator);
+			}
+			if (typeAggregation.estimates != null) {
+				typeAggregation.estimates.write(generator, nrOfObjects);
+			}
+			generator.writeEndObject();
+
+			totalNrOfProperties += typeAggregation.nrOfProperties;
+			totalNrOfRelations += typeAggregation.nrOfRelations;
+			totalNrOfPsets += typeAggregation.nrOfPsets;
+			estimatedNrOfTriangles += typeAggregation.total(typeAggregation.nrOfTriangles);
+			estimatedNrOfPsets += typeAggregation.total(typeAggregation.nrOfPsets);
+			estimatedNrOfProperties += typeAggregation.total(typeAggregation.nrOfProperties);
+			estimatedNrOfRelations += typeAggregation.total(typeAggregation.nrOfRelations);
+		}
+		generator.writeEndObject();
+		long totalNrOfTriangles = this.totalNrOfTriangles;
+		if (context.isSampling()) {
+			totalNrOfTriangles = Math.round(estimatedNrOfTriangles);
+			totalNrOfPsets = Math.round(estimatedNrOfPsets);
+			totalNrOfProperties = Math.round(estimatedNrOfProperties);
+			totalNrOfRelations = Math.round(estimatedNrOfRelations);
+		}
+
+		generator.writeArrayFieldStart("topTenMostComplexObjects");
+		for (int row : mostComplex.sortedRows()) {
+			IdEObject product = model.get(mostComplex.getOid(row));
+			generator.writeStartObject();
+			generator.writeStringField("type", product.eClass().getName());
+			featureCache.writeNameAndGuid(generator, product);
+			if (mostComplex.getPrimitiveCount(row) != 0) {
+				generator.writeNumberField("numberOfTriangles", mostComplex.getPrimitiveCount(row));
+			}
+			if (mostComplex.getVolume(row) != 0) {
+				generator.writeNumberField("volumeM3", mostComplex.getVolume(row));
+			}
+			float trianglesPerVolume = (float) mostComplex.getKey(row);
+			if (!Float.isNaN(trianglesPerVolume)) {
+				generator.writeNumberField("trianglesPerM3", trianglesPerVolume);
+			}
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+
+		generator.writeArrayFieldStart("topTenMostProperties");
+		for (int row : mostProperties.sortedRows()) {
+			IdEObject product = model.get(mostProperties.getOid(row));
+			generator.writeStartObject();
+			generator.writeStringField("type", product.eClass().getName());
+			featureCache.writeNameAndGuid(generator, product);
+			generator.writeNumberField("numberOfProperties", mostProperties.getNrOfProperties(row));
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+
+		generator.writeObjectFieldStart("completeModel");
+
+		generator.writeNumberField("totalTriangles", totalNrOfTriangles);
+		generator.writeNumberField("totalSpaceM2", totalSpaceM2);
+		generator.writeNumberField("totalSpaceM3", totalSpaceM3);
+
+		generator.writeNumberField("totalNrOfObjects", totalNrOfObjects);
+		generator.writeNumberField("totalNrOfProperties", totalNrOfProperties);
+		generator.writeNumberField("totalNrOfPsets", totalNrOfPsets);
+		generator.writeNumberField("totalNrOfRelations", totalNrOfRelations);
+
+		if (totalSpaceM3 != 0) {
+			double averageNrOfObjectsPerM3 = totalNrOfObjects / totalSpaceM3;
+			if (Double.isFinite(averageNrOfObjectsPerM3)) {
+				generator.writeNumberField("averageNrOfObjectsPerM3", averageNrOfObjectsPerM3);
+			}
+			double averagem3 = totalNrOfTriangles / totalSpaceM3;
+			if (Double.isFinite(averagem3)) {
+				generator.writeNumberField("averageAmountOfTrianglesPerM3", averagem3);
+			}
+		}
+		if (totalNrOfObjects != 0) {
+			double averageNrOfPropertiesPerObject = (double)totalNrOfProperties / totalNrOfObjects;
+			if (Double.isFinite(averageNrOfPropertiesPerObject)) {
+				generator.writeNumberField("averageNrOfPropertiesPerObject", averageNrOfPropertiesPerObject);
+			}
+		}
+		if (totalSpaceM2 != 0) {
+			double averagem2 = totalNrOfTriangles / totalSpaceM2;
+			if (Double.isFinite(averagem2)) {
+				generator.writeNumberField("averageAmountOfTrianglesPerM2", averagem2);
+			}
+		}
+		if (distributions != null) {
+			distributions.write(generator);
+		}
+		if (context.isSampling()) {
+			writeTotalEstimates(generator);
+		}
+
+		generator.writeEndObject();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * Marks the aggregations as estimated and lists the figures that are still exact
+	 */
+	private void writeSampling(JsonGenerator generator) throws IOException {
+		long sampleSize = 0;
+		for (TypeAggregation typeAggregation : perType.values()) {
+			sampleSize += typeAggregation.getNrOfSamples();
+		}
+		generator.writeObjectFieldStart("sampling");
+		generator.writeBooleanField("estimated", true);
+		generator.writeNumberField("sampleRate", sample.getSampleRate());
+		generator.writeNumberField("minimumSampleSizePerType", ProductSample.MIN_SAMPLE_SIZE);
+		generator.writeNumberField("sampleSize", sampleSize);
+		generator.writeNumberField("confidence", 0.95);
+		generator.writeArrayFieldStart("exact");
+		generator.writeString("numberOfObjects");
+		generator.writeString("totalNrOfObjects");
+		generator.writeString("totalSpaceM2");
+		generator.writeString("totalSpaceM3");
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * The types are the strata, the variances of their totals add up. The top lists only rank the sampled objects, they
+	 * are marked as estimated next to the intervals.
+	 */
+	private void writeTotalEstimates(JsonGenerator generator) throws IOException {
+		double[] totals = new double[4];
+		double[] variances = new double[4];
+		for (TypeAggregation typeAggregation : perType.values()) {
+			Estimates estimates = typeAggregation.estimates;
+			Moments[] moments = { estimates.triangles, estimates.psets, estimates.properties, estimates.relations };
+			for (int i = 0; i < moments.length; i++) {
+				totals[i] += moments[i].mean() * typeAggregation.nrOfObjects;
+				variances[i] += moments[i].varianceOfTotal(typeAggregation.nrOfObjects);
+			}
+		}
+		String[] fieldNames = { "totalTriangles", "totalNrOfPsets", "totalNrOfProperties", "totalNrOfRelations" };
+		generator.writeObjectFieldStart("estimates");
+		for (int i = 0; i < fieldNames.length; i++) {
+			writeInterval(generator, fieldNames[i], totals[i], Z * Math.sqrt(variances[i]));
+		}
+		for (String topList : new String[] { "topTenMostComplexObjects", "topTenMostProperties" }) {
+			generator.writeObjectFieldStart(topList);
+			generator.writeBooleanField("estimated", true);
+			generator.writeEndObject();
+		}
+		generator.writeEndObject();
+	}
+}
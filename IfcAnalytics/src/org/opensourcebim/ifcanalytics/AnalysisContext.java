@@ -0,0 +1,94 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Set;
+
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.utils.AreaUnit;
+import org.bimserver.utils.IfcUtils;
+import org.bimserver.utils.LengthUnit;
+import org.bimserver.utils.VolumeUnit;
+
+/**
+ * The state of a single analysis run. A new one is created for every runBimBot call, so concurrent runs on the same
+ * service instance never share units, caches or settings.
+ */
+public final class AnalysisContext {
+
+	private final IfcModelInterface model;
+	private final LengthUnit lengthUnit;
+	private final AreaUnit areaUnit;
+	private final VolumeUnit volumeUnit;
+	private final FeatureCache featureCache = new FeatureCache();
+	private final AreaCache areaCache = new AreaCache();
+	private final int parallelism;
+	private final int topListSize;
+	private final Set<Section> sections;
+	private final boolean distributions;
+	private final ProductSample sample;
+
+	/**
+	 * @param sampleRate Fraction of the products of every type to aggregate, 1 for an exact analysis
+	 */
+	public AnalysisContext(IfcModelInterface model, int parallelism, int topListSize, Set<Section> sections, boolean distributions, double sampleRate) {
+		this.model = model;
+		this.lengthUnit = IfcUtils.getLengthUnit(model);
+		this.areaUnit = IfcUtils.getAreaUnit(model);
+		this.volumeUnit = IfcUtils.getVolumeUnit(model);
+		this.parallelism = parallelism;
+		this.topListSize = topListSize;
+		this.sections = sections;
+		this.distributions = distributions;
+		this.sample = sampleRate < 1 ? new ProductSample(model, sampleRate) : null;
+	}
+
+	public IfcModelInterface getModel() {
+		return model;
+	}
+
+	public LengthUnit getLengthUnit() {
+		return lengthUnit;
+	}
+
+	public AreaUnit getAreaUnit() {
+		return areaUnit;
+	}
+
+	public VolumeUnit getVolumeUnit() {
+		return volumeUnit;
+	}
+
+	public FeatureCache getFeatureCache() {
+		return featureCache;
+	}
+
+	public AreaCache getAreaCache() {
+		return areaCache;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public int getTopListSize() {
+		return topListSize;
+	}
+
+	public boolean hasDistributions() {
+		return distributions;
+	}
+
+	/**
+	 * @return The products to aggregate, null for an exact analysis
+	 */
+	public ProductSample getSample() {
+		return sample;
+	}
+
+	public boolean isSampling() {
+		return sample != null;
+	}
+
+	public boolean has(Section section) {
+		return sections.contains(section);
+	}
+}
@@ -0,0 +1,140 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * Walks all IfcProducts of a model once, type by type, and feeds them to the registered accumulators
+ */
+public class AnalyticsEngine {
+
+	private static final int PARTITION_SIZE = 4096;
+
+	private final IfcModelInterface model;
+	private final FeatureCache featureCache;
+	private final int parallelism;
+	private final SharedPool sharedPool;
+	private final List<ProductAccumulator<?>> accumulators = new ArrayList<>();
+
+	public AnalyticsEngine(IfcModelInterface model, FeatureCache featureCache) {
+		this(model, featureCache, 1, null);
+	}
+
+	/**
+	 * @param sharedPool Runs the partitions when parallelism is more than 1, may be null otherwise
+	 */
+	public AnalyticsEngine(IfcModelInterface model, FeatureCache featureCache, int parallelism, SharedPool sharedPool) {
+		this.model = model;
+		this.featureCache = featureCache;
+		this.parallelism = parallelism;
+		this.sharedPool = sharedPool;
+	}
+
+	public <T extends ProductAccumulator<?>> T register(T accumulator) {
+		accumulators.add(accumulator);
+		return accumulator;
+	}
+
+	public void run() {
+		run(Diagnostics.DISABLED.start("products"));
+	}
+
+	/**
+	 * @param phase Receives the cpu time and allocations of the worker threads
+	 * @return The number of products visited
+	 */
+	public int run(Diagnostics.Phase phase) {
+		if (accumulators.isEmpty()) {
+			return 0;
+		}
+		int nrOfProducts = 0;
+		List<List<IdEObject>> partitions = new ArrayList<>();
+		for (EClass ifcProductClass : model.getPackageMetaData().getAllSubClasses(Ifc2x3tc1Package.eINSTANCE.getIfcProduct())) {
+			List<IdEObject> products = model.getAll(ifcProductClass);
+			for (int start = 0; start < products.size(); start += PARTITION_SIZE) {
+				partitions.add(products.subList(start, Math.min(products.size(), start + PARTITION_SIZE)));
+			}
+			nrOfProducts += products.size();
+		}
+		if (parallelism <= 1 || partitions.size() <= 1) {
+			for (List<IdEObject> partition : partitions) {
+				visit(partition, accumulators);
+			}
+		} else {
+			runParallel(partitions, phase);
+		}
+		return nrOfProducts;
+	}
+
+	private void runParallel(List<List<IdEObject>> partitions, final Diagnostics.Phase phase) {
+		try {
+			List<Callable<List<ProductAccumulator<?>>>> tasks = new ArrayList<>();
+			for (final List<IdEObject> partition : partitions) {
+				tasks.add(new Callable<List<ProductAccumulator<?>>>() {
+					@Override
+					public List<ProductAccumulator<?>> call() throws Exception {
+						// The cpu time and allocations of this worker thread count for the phase
+						long startCpuTime = phase.isEnabled() ? Diagnostics.getCurrentThreadCpuTime() : 0;
+						long startAllocatedBytes = phase.isEnabled() ? Diagnostics.getCurrentThreadAllocatedBytes() : 0;
+						try {
+							List<ProductAccumulator<?>> partitionAccumulators = new ArrayList<>();
+							for (ProductAccumulator<?> accumulator : accumulators) {
+								partitionAccumulators.add(accumulator.createPartition());
+							}
+							visit(partition, partitionAccumulators);
+							return partitionAccumulators;
+						} finally {
+							if (phase.isEnabled()) {
+								phase.addWorker(Diagnostics.getCurrentThreadCpuTime() - startCpuTime, Diagnostics.getCurrentThreadAllocatedBytes() - startAllocatedBytes);
+							}
+						}
+					}
+				});
+			}
+			// Merging in partition order keeps the result identical to the sequential pass
+			for (List<ProductAccumulator<?>> partitionAccumulators : sharedPool.invokeAll(tasks, parallelism)) {
+				for (int i = 0; i < accumulators.size(); i++) {
+					merge(accumulators.get(i), partitionAccumulators.get(i));
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T extends ProductAccumulator<T>> void merge(ProductAccumulator<?> accumulator, ProductAccumulator<?> partition) {
+		((T) accumulator).merge((T) partition);
+	}
+
+	private void visit(List<IdEObject> products, List<ProductAccumulator<?>> accumulators) {
+		EStructuralFeature geometryFeature = featureCache.get(products.get(0).eClass()).getGeometry();
+		for (IdEObject product : products) {
+			GeometryInfo geometry = null;
+			for (ProductAccumulator<?> accumulator : accumulators) {
+				if (accumulator.needsGeometry(product)) {
+					geometry = (GeometryInfo) product.eGet(geometryFeature);
+					break;
+				}
+			}
+			for (ProductAccumulator<?> accumulator : accumulators) {
+				accumulator.visit(product, geometry);
+			}
+		}
+	}
+}
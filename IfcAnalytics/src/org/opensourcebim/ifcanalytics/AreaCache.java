@@ -0,0 +1,81 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bimserver.models.geometry.GeometryInfo;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
+
+/**
+ * Per run cache of the area of a GeometryInfo, keyed by its oid.
+ * 
+ * The additional data is scanned with a streaming parser that only picks up the two area fields, instead of reading it
+ * into a tree. Values are converted the same way JsonNode.asDouble() would.
+ */
+public class AreaCache {
+
+	private final ConcurrentMap<Long, Double> areas = new ConcurrentHashMap<>();
+
+	public double getArea(GeometryInfo geometryInfo) {
+		Double area = areas.get(geometryInfo.getOid());
+		if (area == null) {
+			area = readArea(geometryInfo);
+			areas.put(geometryInfo.getOid(), area);
+		}
+		return area;
+	}
+
+	private double readArea(GeometryInfo geometryInfo) {
+		if (geometryInfo.getAdditionalData() != null) {
+			try (JsonParser parser = IfcAnalyticsService.OBJECT_MAPPER.getFactory().createParser(geometryInfo.getAdditionalData())) {
+				if (parser.nextToken() != JsonToken.START_OBJECT) {
+					throw new JsonParseException(parser, "Additional data is not an object");
+				}
+				Double walkableSurfaceArea = null;
+				Double surfaceAreaAlongZ = null;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String fieldName = parser.getCurrentName();
+					JsonToken value = parser.nextToken();
+					if (fieldName.equals("WALKABLE_SURFACE_AREA")) {
+						walkableSurfaceArea = asDouble(parser, value);
+					} else if (fieldName.equals("SURFACE_AREA_ALONG_Z")) {
+						surfaceAreaAlongZ = asDouble(parser, value);
+					} else {
+						parser.skipChildren();
+					}
+				}
+				if (walkableSurfaceArea != null) {
+					return walkableSurfaceArea;
+				} else if (surfaceAreaAlongZ != null) {
+					return surfaceAreaAlongZ;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		return geometryInfo.getArea();
+	}
+
+	private static double asDouble(JsonParser parser, JsonToken value) throws IOException {
+		switch (value) {
+		case VALUE_NUMBER_INT:
+		case VALUE_NUMBER_FLOAT:
+			return parser.getDoubleValue();
+		case VALUE_STRING:
+			return NumberInput.parseAsDouble(parser.getText(), 0.0);
+		case VALUE_TRUE:
+			return 1.0;
+		case START_OBJECT:
+		case START_ARRAY:
+			parser.skipChildren();
+			return 0.0;
+		default:
+			return 0.0;
+		}
+	}
+}
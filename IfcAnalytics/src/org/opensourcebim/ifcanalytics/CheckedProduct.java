@@ -0,0 +1,83 @@
+package org.opensourcebim.ifcanalytics;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.models.geometry.Bounds;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.utils.LengthUnit;
+import org.bimserver.utils.VolumeUnit;
+
+/**
+ * The product a {@link ModelCheck} looks at. Geometry, vertices and property counts are only filled in when one of
+ * the checks on the type of the product asks for them. One instance is reused for all products of a partition.
+ */
+public class CheckedProduct {
+
+	private final AnalysisContext context;
+	private final PropertyIndex propertyIndex;
+
+	private IdEObject product;
+	private GeometryInfo geometry;
+	private byte[] vertices;
+
+	CheckedProduct(AnalysisContext context, PropertyIndex propertyIndex) {
+		this.context = context;
+		this.propertyIndex = propertyIndex;
+	}
+
+	void set(IdEObject product, GeometryInfo geometry, byte[] vertices) {
+		this.product = product;
+		this.geometry = geometry;
+		this.vertices = vertices;
+	}
+
+	public IdEObject getProduct() {
+		return product;
+	}
+
+	public FeatureCache getFeatureCache() {
+		return context.getFeatureCache();
+	}
+
+	/**
+	 * @return The geometry when a check asked for {@link ModelCheck.Data#BOUNDS} or {@link ModelCheck.Data#VERTICES}, null otherwise or without geometry
+	 */
+	public GeometryInfo getGeometry() {
+		return geometry;
+	}
+
+	/**
+	 * @return World bounds in millimeters, null when not asked for or missing
+	 */
+	public Bounds getBoundsMm() {
+		return geometry == null ? null : geometry.getBoundsMm();
+	}
+
+	/**
+	 * @return Vertex data as stored by BIMserver when a check asked for {@link ModelCheck.Data#VERTICES}, null otherwise or without geometry
+	 */
+	public byte[] getVertices() {
+		return vertices;
+	}
+
+	/**
+	 * @return Number of property sets, 0 unless a check asked for {@link ModelCheck.Data#PSETS}
+	 */
+	public int getNrOfPsets() {
+		return propertyIndex == null ? 0 : propertyIndex.getNrOfPsets(product.getOid());
+	}
+
+	/**
+	 * @return Number of properties over all property sets, 0 unless a check asked for {@link ModelCheck.Data#PSETS}
+	 */
+	public int getNrOfProperties() {
+		return propertyIndex == null ? 0 : propertyIndex.getNrOfProperties(product.getOid());
+	}
+
+	public LengthUnit getLengthUnit() {
+		return context.getLengthUnit();
+	}
+
+	public VolumeUnit getVolumeUnit() {
+		return context.getVolumeUnit();
+	}
+}
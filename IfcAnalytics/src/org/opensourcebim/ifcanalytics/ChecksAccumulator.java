@@ -0,0 +1,223 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Runs all {@link ModelCheck}s in the product pass. Per type the applicable checks and the data they need are worked
+ * out once, the geometry is only loaded when a check on the type reads bounds or vertices. Every check counts its
+ * offenders and keeps the first ones in model order as examples.
+ */
+public class ChecksAccumulator implements ProductAccumulator<ChecksAccumulator> {
+
+	private static final int MAX_EXAMPLES = 10;
+
+	/**
+	 * The checks for one type and the union of the data they need
+	 */
+	private static class Schedule {
+		private final int[] checks;
+		private final boolean geometry;
+		private final boolean vertices;
+
+		private Schedule(int[] checks, boolean geometry, boolean vertices) {
+			this.checks = checks;
+			this.geometry = geometry;
+			this.vertices = vertices;
+		}
+	}
+
+	private final AnalysisContext context;
+	private final List<ModelCheck> checks;
+	private final PropertyIndex propertyIndex;
+	private final ConcurrentMap<EClass, Schedule> schedules;
+	private final CheckedProduct checkedProduct;
+
+	private final int[] nrOfOffenders;
+	private final long[][] examples;
+	private boolean clashDetection;
+	private JsonNode clashes;
+	private long nrOfClashes = -1;
+
+	/**
+	 * @param propertyIndex Only used when a check asks for {@link ModelCheck.Data#PSETS}, may be null otherwise
+	 */
+	public ChecksAccumulator(AnalysisContext context, List<ModelCheck> checks, PropertyIndex propertyIndex) {
+		this(context, checks, propertyIndex, new ConcurrentHashMap<EClass, Schedule>());
+	}
+
+	private ChecksAccumulator(AnalysisContext context, List<ModelCheck> checks, PropertyIndex propertyIndex, ConcurrentMap<EClass, Schedule> schedules) {
+		this.context = context;
+		this.checks = checks;
+		this.propertyIndex = propertyIndex;
+		this.schedules = schedules;
+		this.checkedProduct = new CheckedProduct(context, propertyIndex);
+		this.nrOfOffenders = new int[checks.size()];
+		this.examples = new long[checks.size()][0];
+	}
+
+	/**
+	 * @return The built in checks followed by the ones found with {@link ServiceLoader}
+	 */
+	public static List<ModelCheck> loadChecks() {
+		List<ModelCheck> checks = new ArrayList<>();
+		checks.add(new CubeNearZeroCheck());
+		for (ModelCheck check : ServiceLoader.load(ModelCheck.class, ModelCheck.class.getClassLoader())) {
+			checks.add(check);
+		}
+		return checks;
+	}
+
+	/**
+	 * @return Whether one of the checks needs the property index
+	 */
+	public static boolean needsPsets(List<ModelCheck> checks) {
+		for (ModelCheck check : checks) {
+			if (check.getData().contains(ModelCheck.Data.PSETS)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean needsGeometry(IdEObject product) {
+		return getSchedule(product.eClass()).geometry;
+	}
+
+	@Override
+	public void visit(IdEObject product, GeometryInfo geometry) {
+		Schedule schedule = getSchedule(product.eClass());
+		if (schedule.checks.length == 0) {
+			return;
+		}
+		byte[] vertices = null;
+		if (schedule.vertices && geometry != null && geometry.getData() != null && geometry.getData().getVertices() != null) {
+			vertices = geometry.getData().getVertices().getData();
+		}
+		checkedProduct.set(product, schedule.geometry ? geometry : null, vertices);
+		for (int check : schedule.checks) {
+			if (checks.get(check).isOffender(checkedProduct)) {
+				if (nrOfOffenders[check] < MAX_EXAMPLES) {
+					examples[check] = append(examples[check], product.getOid());
+				}
+				nrOfOffenders[check]++;
+			}
+		}
+	}
+
+	private Schedule getSchedule(EClass eClass) {
+		Schedule schedule = schedules.get(eClass);
+		if (schedule == null) {
+			List<Integer> applicable = new ArrayList<>();
+			boolean geometry = false;
+			boolean vertices = false;
+			for (int i = 0; i < checks.size(); i++) {
+				ModelCheck check = checks.get(i);
+				if (check.getType().isSuperTypeOf(eClass)) {
+					applicable.add(i);
+					Set<ModelCheck.Data> data = check.getData();
+					geometry |= data.contains(ModelCheck.Data.BOUNDS) || data.contains(ModelCheck.Data.VERTICES);
+					vertices |= data.contains(ModelCheck.Data.VERTICES);
+				}
+			}
+			int[] indexes = new int[applicable.size()];
+			for (int i = 0; i < indexes.length; i++) {
+				indexes[i] = applicable.get(i);
+			}
+			schedule = new Schedule(indexes, geometry, vertices);
+			schedules.putIfAbsent(eClass, schedule);
+		}
+		return schedule;
+	}
+
+	private static long[] append(long[] oids, long oid) {
+		long[] result = new long[oids.length + 1];
+		System.arraycopy(oids, 0, result, 0, oids.length);
+		result[oids.length] = oid;
+		return result;
+	}
+
+	@Override
+	public ChecksAccumulator createPartition() {
+		return new ChecksAccumulator(context, checks, propertyIndex, schedules);
+	}
+
+	@Override
+	public void merge(ChecksAccumulator partition) {
+		for (int check = 0; check < checks.size(); check++) {
+			for (long oid : partition.examples[check]) {
+				if (examples[check].length < MAX_EXAMPLES) {
+					examples[check] = append(examples[check], oid);
+				}
+			}
+			nrOfOffenders[check] += partition.nrOfOffenders[check];
+		}
+	}
+
+	public void setClashes(JsonNode clashes) {
+		this.clashDetection = true;
+		this.clashes = clashes;
+	}
+
+	/**
+	 * @param nrOfClashes Number of clashes found, more than in the clashes list when that was truncated
+	 */
+	public void setClashes(JsonNode clashes, long nrOfClashes) {
+		setClashes(clashes);
+		this.nrOfClashes = nrOfClashes;
+	}
+
+	/**
+	 * @return Number of products that failed the check with the given name, -1 for an unknown check
+	 */
+	public int getNrOfOffenders(String name) {
+		for (int check = 0; check < checks.size(); check++) {
+			if (checks.get(check).getName().equals(name)) {
+				return nrOfOffenders[check];
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		if (clashDetection) {
+			generator.writeFieldName("clashes");
+			generator.writeTree(clashes);
+			if (nrOfClashes != -1) {
+				generator.writeNumberField("nrOfClashes", nrOfClashes);
+				generator.writeBooleanField("clashesTruncated", nrOfClashes > clashes.size());
+			}
+		}
+		generator.writeBooleanField("hasCubeNearZero", getNrOfOffenders("cubeNearZero") > 0);
+		for (int check = 0; check < checks.size(); check++) {
+			generator.writeObjectFieldStart(checks.get(check).getName());
+			generator.writeNumberField("nrOfOffenders", nrOfOffenders[check]);
+			generator.writeArrayFieldStart("examples");
+			for (long oid : examples[check]) {
+				IdEObject product = context.getModel().get(oid);
+				generator.writeStartObject();
+				generator.writeStringField("type", product.eClass().getName());
+				context.getFeatureCache().writeNameAndGuid(generator, product);
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		generator.writeEndObject();
+	}
+}
@@ -0,0 +1,126 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.bimserver.bimbots.BimBotsInput;
+import org.bimserver.bimbots.BimBotsOutput;
+import org.bimserver.plugins.services.BimBotClient;
+import org.bimserver.plugins.services.BimBotExecutionException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Calls the remote clash detection bot in the background, so the call overlaps with the local analytics
+ */
+public class ClashDetectionCall {
+
+	private final Future<JsonNode> future;
+	private final long deadline;
+
+	private ClashDetectionCall(Future<JsonNode> future, long deadline) {
+		this.future = future;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Threads for the calls of one service, at most nrOfThreads calls run at the same time and the others queue. Idle
+	 * threads stop after a minute.
+	 */
+	public static ExecutorService createExecutor(int nrOfThreads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(nrOfThreads, nrOfThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "IfcAnalytics clash detection");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * @param clashDetection Returns the list of clashes, or null when the detection failed
+	 * @param timeoutMillis Counted from now, 0 or less to wait until the call is done
+	 * @param phase Measures the call itself on the thread that runs it, from leaving the queue until it is done. Stays
+	 *            empty when the call does not finish in time.
+	 */
+	public static ClashDetectionCall start(ExecutorService executor, final Callable<JsonNode> clashDetection, long timeoutMillis, final Diagnostics.Phase phase) {
+		Future<JsonNode> future = executor.submit(new Callable<JsonNode>() {
+			@Override
+			public JsonNode call() throws Exception {
+				phase.start();
+				try {
+					return clashDetection.call();
+				} finally {
+					phase.stop();
+				}
+			}
+		});
+		return new ClashDetectionCall(future, timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : Long.MAX_VALUE);
+	}
+
+	/**
+	 * The clash detection of the remote bot with the given identifier
+	 */
+	public static Callable<JsonNode> remote(final BimBotsInput input, final String url, final String token, final String identifier) {
+		return new Callable<JsonNode>() {
+			@Override
+			public JsonNode call() throws Exception {
+				return callClashDetectionService(input, url, token, identifier);
+			}
+		};
+	}
+
+	/**
+	 * Waits for the remaining part of the timeout, a call that does not finish in time is cancelled and reported with a timeout status
+	 */
+	public JsonNode getResult() {
+		try {
+			if (deadline == Long.MAX_VALUE) {
+				return future.get();
+			}
+			return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			ObjectNode timeoutNode = IfcAnalyticsService.OBJECT_MAPPER.createObjectNode();
+			timeoutNode.put("status", "timeout");
+			return timeoutNode;
+		} catch (InterruptedException e) {
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	private static ArrayNode callClashDetectionService(BimBotsInput input, String url, String token, String identifier) {
+		try (BimBotClient bimBotClient = new BimBotClient(url, token)) {
+			BimBotsOutput bimBotsOutput = bimBotClient.call(identifier, input);
+			return IfcAnalyticsService.OBJECT_MAPPER.readValue(bimBotsOutput.getData(), ArrayNode.class);
+		} catch (BimBotExecutionException e) {
+			e.printStackTrace();
+		} catch (JsonParseException e) {
+			e.printStackTrace();
+		} catch (JsonMappingException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,141 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * The classifications section: classifications with the same name, edition, source and edition date are merged, as
+ * are references with the same location, item reference and name. Counts are plain ints that are only written at the
+ * end.
+ */
+public class ClassificationTree {
+
+	private static class ClassificationNode {
+		private String name;
+		private String edition;
+		private String source;
+		private int[] editionDate;
+		private final List<ReferenceNode> references = new ArrayList<>();
+	}
+
+	private static class ReferenceNode {
+		private String location;
+		private String itemReference;
+		private String name;
+		private int numberOfObjects;
+	}
+
+	private final List<ClassificationNode> classifications = new ArrayList<>();
+	private final Map<String, Integer> classificationsByName = new HashMap<>();
+	private final ClassificationNode noClassification = new ClassificationNode();
+	private final List<ReferenceNode> references = new ArrayList<>();
+	private final Map<String, Integer> referencesByName = new HashMap<>();
+
+	/**
+	 * @param editionDate Year, month and day, or null
+	 * @return Index of the classification, the index of an earlier equal one if there is one
+	 */
+	public int addClassification(String name, String edition, String source, int[] editionDate) {
+		String canonicalName = name + "_" + edition + "_" + source;
+		if (editionDate != null) {
+			canonicalName += editionDate[0] + "_" + editionDate[1] + "_" + editionDate[2];
+		}
+		Integer index = classificationsByName.get(canonicalName);
+		if (index == null) {
+			ClassificationNode classificationNode = new ClassificationNode();
+			classificationNode.name = name;
+			classificationNode.edition = edition;
+			classificationNode.source = source;
+			classificationNode.editionDate = editionDate;
+			index = classifications.size();
+			classifications.add(classificationNode);
+			classificationsByName.put(canonicalName, index);
+		}
+		return index;
+	}
+
+	/**
+	 * @param classification Index returned by addClassification, -1 for references without classification
+	 * @return Index of the reference, the index of an earlier equal one if there is one
+	 */
+	public int addReference(int classification, String location, String itemReference, String name) {
+		String canonicalName = location + "_" + itemReference + "_" + name;
+		Integer index = referencesByName.get(canonicalName);
+		if (index == null) {
+			ReferenceNode referenceNode = new ReferenceNode();
+			referenceNode.location = location;
+			referenceNode.itemReference = itemReference;
+			referenceNode.name = name;
+			index = references.size();
+			references.add(referenceNode);
+			referencesByName.put(canonicalName, index);
+			(classification == -1 ? noClassification : classifications.get(classification)).references.add(referenceNode);
+		}
+		return index;
+	}
+
+	public void addObjects(int reference, int nrOfObjects) {
+		references.get(reference).numberOfObjects += nrOfObjects;
+	}
+
+	public void write(JsonGenerator generator, int objectsWithoutClassification) throws IOException {
+		generator.writeStartArray();
+		for (ClassificationNode classificationNode : classifications) {
+			generator.writeStartObject();
+			if (classificationNode.name != null) {
+				generator.writeStringField("name", classificationNode.name);
+			}
+			if (classificationNode.edition != null) {
+				generator.writeStringField("edition", classificationNode.edition);
+			}
+			if (classificationNode.source != null) {
+				generator.writeStringField("source", classificationNode.source);
+			}
+			if (classificationNode.editionDate != null) {
+				generator.writeObjectFieldStart("editionDate");
+				generator.writeNumberField("yearComponent", classificationNode.editionDate[0]);
+				generator.writeNumberField("monthComponent", classificationNode.editionDate[1]);
+				generator.writeNumberField("dayComponent", classificationNode.editionDate[2]);
+				generator.writeEndObject();
+			}
+			generator.writeArrayFieldStart("references");
+			writeReferences(generator, classificationNode.references);
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+
+		generator.writeStartObject();
+		generator.writeStringField("name", "NO_CLASSIFICATION");
+		generator.writeArrayFieldStart("references");
+		generator.writeStartObject();
+		generator.writeStringField("name", "NO_CLASSIFICATION_REFERENCE");
+		generator.writeNumberField("numberOfObjects", objectsWithoutClassification);
+		generator.writeEndObject();
+		writeReferences(generator, noClassification.references);
+		generator.writeEndArray();
+		generator.writeEndObject();
+		generator.writeEndArray();
+	}
+
+	private static void writeReferences(JsonGenerator generator, List<ReferenceNode> referenceNodes) throws IOException {
+		for (ReferenceNode referenceNode : referenceNodes) {
+			generator.writeStartObject();
+			if (referenceNode.location != null) {
+				generator.writeStringField("location", referenceNode.location);
+			}
+			if (referenceNode.itemReference != null) {
+				generator.writeStringField("itemReference", referenceNode.itemReference);
+			}
+			if (referenceNode.name != null) {
+				generator.writeStringField("name", referenceNode.name);
+			}
+			generator.writeNumberField("numberOfObjects", referenceNode.numberOfObjects);
+			generator.writeEndObject();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.ifc2x3tc1.IfcCalendarDate;
+import org.bimserver.models.ifc2x3tc1.IfcClassification;
+import org.bimserver.models.ifc2x3tc1.IfcClassificationNotationSelect;
+import org.bimserver.models.ifc2x3tc1.IfcClassificationReference;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesClassification;
+import org.bimserver.models.ifc2x3tc1.IfcRoot;
+import org.eclipse.emf.common.util.EList;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+public class ClassificationsAccumulator implements ProductAccumulator<ClassificationsAccumulator> {
+
+	private final ClassificationTree classificationTree;
+	private final OidSet set;
+	private int objectsWithoutClassification;
+
+	private ClassificationsAccumulator(ClassificationsAccumulator parent) {
+		this.classificationTree = null;
+		this.set = parent.set;
+	}
+
+	public ClassificationsAccumulator(IfcModelInterface model) {
+		classificationTree = new ClassificationTree();
+		set = new OidSet();
+		// Indexes in the tree are stored + 1, a missing oid reads as 0
+		LongIntHashMap classifications = new LongIntHashMap();
+		for (IfcClassification ifcClassification : model.getAll(IfcClassification.class)) {
+			IfcCalendarDate editionDate = ifcClassification.getEditionDate();
+			int[] date = null;
+			if (editionDate != null) {
+				date = new int[] { (int) editionDate.getYearComponent(), (int) editionDate.getMonthComponent(), (int) editionDate.getDayComponent() };
+			}
+			classifications.addTo(ifcClassification.getOid(), classificationTree.addClassification(ifcClassification.getName(), ifcClassification.getEdition(), ifcClassification.getSource(), date) + 1);
+		}
+
+		LongIntHashMap classificationReferences = new LongIntHashMap();
+		for (IfcClassificationReference ifcClassificationReference : model.getAllWithSubTypes(IfcClassificationReference.class)) {
+			IfcClassification referencedSource = ifcClassificationReference.getReferencedSource();
+			int classification = referencedSource == null ? -1 : classifications.get(referencedSource.getOid()) - 1;
+			int reference = classificationTree.addReference(classification, ifcClassificationReference.getLocation(), ifcClassificationReference.getItemReference(), ifcClassificationReference.getName());
+			classificationReferences.addTo(ifcClassificationReference.getOid(), reference + 1);
+		}
+
+		for (IfcRelAssociatesClassification ifcRelAssociatesClassification : model.getAll(IfcRelAssociatesClassification.class)) {
+			IfcClassificationNotationSelect relatingClassification = ifcRelAssociatesClassification.getRelatingClassification();
+			if (relatingClassification instanceof IfcClassificationReference) {
+				EList<IfcRoot> relatedObjects = ifcRelAssociatesClassification.getRelatedObjects();
+				for (IfcRoot ifcRoot : relatedObjects) {
+					set.add(ifcRoot.getOid());
+				}
+				classificationTree.addObjects(classificationReferences.get(relatingClassification.getOid()) - 1, relatedObjects.size());
+			}
+		}
+	}
+
+	@Override
+	public boolean needsGeometry(IdEObject product) {
+		return false;
+	}
+
+	@Override
+	public void visit(IdEObject product, GeometryInfo geometry) {
+		if (!set.contains(product.getOid())) {
+			objectsWithoutClassification++;
+		}
+	}
+
+	@Override
+	public ClassificationsAccumulator createPartition() {
+		return new ClassificationsAccumulator(this);
+	}
+
+	@Override
+	public void merge(ClassificationsAccumulator partition) {
+		objectsWithoutClassification += partition.objectsWithoutClassification;
+	}
+
+	@Override
+	public void write(JsonGenerator generator) throws IOException {
+		classificationTree.write(generator, objectsWithoutClassification);
+	}
+}
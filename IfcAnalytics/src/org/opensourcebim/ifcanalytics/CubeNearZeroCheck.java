@@ -0,0 +1,81 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.bimserver.models.geometry.Bounds;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.utils.LengthUnit;
+import org.bimserver.utils.VolumeUnit;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Products of 1 m3 with all vertices within 1 m of the origin, usually a placeholder that was left in the model
+ */
+public class CubeNearZeroCheck implements ModelCheck {
+
+	private static final int FLOAT_ABS_MASK = 0x7fffffff;
+	private static final int FLOAT_INFINITY_BITS = 0x7f800000;
+
+	@Override
+	public String getName() {
+		return "cubeNearZero";
+	}
+
+	@Override
+	public EClass getType() {
+		return Ifc2x3tc1Package.eINSTANCE.getIfcProduct();
+	}
+
+	@Override
+	public Set<Data> getData() {
+		return EnumSet.of(Data.BOUNDS, Data.VERTICES);
+	}
+
+	@Override
+	public boolean isOffender(CheckedProduct product) {
+		GeometryInfo geometry = product.getGeometry();
+		if (geometry == null) {
+			return false;
+		}
+		double volumeM3 = VolumeUnit.CUBIC_METER.convert(geometry.getVolume(), product.getVolumeUnit());
+		if (volumeM3 > 0.999 && volumeM3 < 1.001) {
+			Bounds bounds = product.getBoundsMm();
+			if (bounds != null && !boundsWithinOneMeterOfZero(bounds)) {
+				return false;
+			}
+			if (product.getVertices() != null) {
+				// The threshold in model units, so the vertices can be compared without converting every float
+				return verticesWithin(product.getVertices(), Float.floatToIntBits(product.getLengthUnit().convert(1f, LengthUnit.METER)));
+			}
+			// Without vertex data the bounds, already checked above, decide
+			return bounds != null;
+		}
+		return false;
+	}
+
+	private static boolean boundsWithinOneMeterOfZero(Bounds bounds) {
+		return withinOneMeter(bounds.getMin().getX()) && withinOneMeter(bounds.getMin().getY()) && withinOneMeter(bounds.getMin().getZ())
+			&& withinOneMeter(bounds.getMax().getX()) && withinOneMeter(bounds.getMax().getY()) && withinOneMeter(bounds.getMax().getZ());
+	}
+
+	private static boolean withinOneMeter(double millimeters) {
+		return !(millimeters < -1000 || millimeters > 1000);
+	}
+
+	/**
+	 * Scans big endian floats. For non-NaN floats the magnitude of the bits orders the same as the absolute value, so
+	 * |v| > limit is a single integer compare. NaN (bits above infinity) passes, like the float comparison used to.
+	 */
+	private static boolean verticesWithin(byte[] vertices, int limitBits) {
+		for (int i = 0; i + 3 < vertices.length; i += 4) {
+			int bits = ((vertices[i] & 0xff) << 24) | ((vertices[i + 1] & 0xff) << 16) | ((vertices[i + 2] & 0xff) << 8) | (vertices[i + 3] & 0xff);
+			int absBits = bits & FLOAT_ABS_MASK;
+			if (absBits > limitBits && absBits <= FLOAT_INFINITY_BITS) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,180 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Wall time, cpu time, allocated bytes and object count per phase of a run. The disabled instance hands out a shared
+ * phase that does nothing, so instrumented code costs a virtual call when diagnostics are off.
+ *
+ * Cpu time and allocations are measured on the thread that starts and stops a phase, work done on other threads is
+ * added with {@link Phase#addWorker(long, long)}.
+ */
+public class Diagnostics {
+
+	public static final Diagnostics DISABLED = new Diagnostics(false);
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	public static class Phase {
+
+		private static final Phase DISABLED = new Phase(null);
+
+		private final String name;
+		private long startWallTime;
+		private long startCpuTime;
+		private long startAllocatedBytes;
+		private long wallTime;
+		private long cpuTime;
+		private long allocatedBytes;
+		private long objects;
+		private final AtomicLong workerCpuTime = new AtomicLong();
+		private final AtomicLong workerAllocatedBytes = new AtomicLong();
+
+		private Phase(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Starts measuring on the current thread, for a phase that was added to run on another thread
+		 */
+		public void start() {
+			if (this == DISABLED) {
+				return;
+			}
+			startCpuTime = getCurrentThreadCpuTime();
+			startAllocatedBytes = getCurrentThreadAllocatedBytes();
+			startWallTime = System.nanoTime();
+		}
+
+		public boolean isEnabled() {
+			return this != DISABLED;
+		}
+
+		public void stop() {
+			stop(0);
+		}
+
+		public void stop(long objects) {
+			if (this == DISABLED) {
+				return;
+			}
+			wallTime = System.nanoTime() - startWallTime;
+			cpuTime = getCurrentThreadCpuTime() - startCpuTime;
+			allocatedBytes = getCurrentThreadAllocatedBytes() - startAllocatedBytes;
+			this.objects = objects;
+		}
+
+		/**
+		 * Adds the cpu time and allocations of work done for this phase on another thread
+		 */
+		public void addWorker(long cpuTime, long allocatedBytes) {
+			if (this == DISABLED) {
+				return;
+			}
+			workerCpuTime.addAndGet(cpuTime);
+			workerAllocatedBytes.addAndGet(allocatedBytes);
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		public long getCpuTime() {
+			return cpuTime + workerCpuTime.get();
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes + workerAllocatedBytes.get();
+		}
+
+		public long getObjects() {
+			return objects;
+		}
+	}
+
+	private final boolean enabled;
+	private final List<Phase> phases = new ArrayList<>();
+
+	private Diagnostics(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public static Diagnostics create(boolean enabled) {
+		return enabled ? new Diagnostics(true) : DISABLED;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public Phase start(String name) {
+		if (!enabled) {
+			return Phase.DISABLED;
+		}
+		Phase phase = new Phase(name);
+		phases.add(phase);
+		phase.start();
+		return phase;
+	}
+
+	/**
+	 * @return A phase in the output order of this run that is started and stopped later, on the thread that does its
+	 *         work
+	 */
+	public Phase add(String name) {
+		if (!enabled) {
+			return Phase.DISABLED;
+		}
+		Phase phase = new Phase(name);
+		phases.add(phase);
+		return phase;
+	}
+
+	public List<Phase> getPhases() {
+		return phases;
+	}
+
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeArrayFieldStart("phases");
+		for (Phase phase : phases) {
+			generator.writeStartObject();
+			generator.writeStringField("name", phase.getName());
+			generator.writeNumberField("wallTimeMs", phase.getWallTime() / 1000000.0);
+			generator.writeNumberField("cpuTimeMs", phase.getCpuTime() / 1000000.0);
+			generator.writeNumberField("allocatedBytes", phase.getAllocatedBytes());
+			generator.writeNumberField("objects", phase.getObjects());
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+		generator.writeEndObject();
+	}
+
+	/**
+	 * @return Cpu time of the current thread in nanoseconds, 0 when the JVM does not measure it
+	 */
+	public static long getCurrentThreadCpuTime() {
+		return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * @return Bytes allocated by the current thread so far, 0 when the JVM does not measure it
+	 */
+	public static long getCurrentThreadAllocatedBytes() {
+		if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+}
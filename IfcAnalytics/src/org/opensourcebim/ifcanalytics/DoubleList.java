@@ -0,0 +1,43 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Arrays;
+
+public class DoubleList {
+
+	private double[] values = new double[16];
+	private int size;
+
+	public void add(double value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	public void addAll(DoubleList other) {
+		if (size + other.size > values.length) {
+			values = Arrays.copyOf(values, Math.max(size + other.size, size * 2));
+		}
+		System.arraycopy(other.values, 0, values, size, other.size);
+		size += other.size;
+	}
+
+	public double get(int index) {
+		return values[index];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Sums in insertion order, so the result does not depend on how the values were partitioned
+	 */
+	public double sum() {
+		double sum = 0;
+		for (int i = 0; i < size; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,120 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bimserver.emf.IdEObject;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Resolves the features that are read reflectively once per EClass, instead of a name lookup for every object
+ */
+public class FeatureCache {
+
+	public static class ClassFeatures {
+		private final EStructuralFeature globalId;
+		private final EStructuralFeature name;
+		private final EStructuralFeature geometry;
+		private final EStructuralFeature unitType;
+		private final EStructuralFeature prefix;
+		private final EStructuralFeature unitsInContext;
+		private final EStructuralFeature units;
+		private final EStructuralFeature isDecomposedBy;
+		private final EStructuralFeature relatedObjects;
+
+		private ClassFeatures(EClass eClass) {
+			globalId = eClass.getEStructuralFeature("GlobalId");
+			name = eClass.getEStructuralFeature("Name");
+			geometry = eClass.getEStructuralFeature("geometry");
+			unitType = eClass.getEStructuralFeature("UnitType");
+			prefix = eClass.getEStructuralFeature("Prefix");
+			unitsInContext = eClass.getEStructuralFeature("UnitsInContext");
+			units = eClass.getEStructuralFeature("Units");
+			isDecomposedBy = eClass.getEStructuralFeature("IsDecomposedBy");
+			relatedObjects = eClass.getEStructuralFeature("RelatedObjects");
+		}
+
+		public EStructuralFeature getGlobalId() {
+			return globalId;
+		}
+
+		public EStructuralFeature getName() {
+			return name;
+		}
+
+		public EStructuralFeature getGeometry() {
+			return geometry;
+		}
+
+		public EStructuralFeature getUnitType() {
+			return unitType;
+		}
+
+		public EStructuralFeature getPrefix() {
+			return prefix;
+		}
+
+		public EStructuralFeature getUnitsInContext() {
+			return unitsInContext;
+		}
+
+		public EStructuralFeature getUnits() {
+			return units;
+		}
+
+		public EStructuralFeature getIsDecomposedBy() {
+			return isDecomposedBy;
+		}
+
+		public EStructuralFeature getRelatedObjects() {
+			return relatedObjects;
+		}
+	}
+
+	private final ConcurrentMap<EClass, ClassFeatures> cache = new ConcurrentHashMap<>();
+
+	public ClassFeatures get(EClass eClass) {
+		ClassFeatures classFeatures = cache.get(eClass);
+		if (classFeatures == null) {
+			classFeatures = new ClassFeatures(eClass);
+			ClassFeatures existing = cache.putIfAbsent(eClass, classFeatures);
+			if (existing != null) {
+				classFeatures = existing;
+			}
+		}
+		return classFeatures;
+	}
+
+	public void writeNameAndGuid(JsonGenerator generator, IdEObject ifcRoot) throws IOException {
+		ClassFeatures classFeatures = get(ifcRoot.eClass());
+		String name = (String) ifcRoot.eGet(classFeatures.getName());
+		if (name != null) {
+			generator.writeStringField("name", name);
+		}
+		if (classFeatures.getGlobalId() != null) {
+			String guid = (String) ifcRoot.eGet(classFeatures.getGlobalId());
+			if (guid != null) {
+				generator.writeStringField("guid", guid);
+			}
+		}
+	}
+
+	public void putNameAndGuid(ObjectNode objectNode, IdEObject ifcRoot) {
+		ClassFeatures classFeatures = get(ifcRoot.eClass());
+		String name = (String) ifcRoot.eGet(classFeatures.getName());
+		if (name != null) {
+			objectNode.put("name", name);
+		}
+		if (classFeatures.getGlobalId() != null) {
+			String guid = (String) ifcRoot.eGet(classFeatures.getGlobalId());
+			if (guid != null) {
+				objectNode.put("guid", guid);
+			}
+		}
+	}
+}
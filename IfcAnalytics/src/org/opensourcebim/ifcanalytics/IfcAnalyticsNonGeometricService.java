@@ -0,0 +1,31 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Set;
+
+/**
+ * Only the sections that can be computed without geometry, so BIMserver can skip generating it
+ */
+public class IfcAnalyticsNonGeometricService extends IfcAnalyticsService {
+
+	/**
+	 * An empty setting gives all sections without geometry, asking for a section that needs geometry is an error
+	 */
+	@Override
+	protected Set<Section> getSections(String sections) {
+		if (sections == null || sections.trim().isEmpty()) {
+			return Section.withoutGeometry();
+		}
+		Set<Section> result = super.getSections(sections);
+		for (Section section : result) {
+			if (section.needsGeometry()) {
+				throw new IllegalArgumentException("Section \"" + section.getFieldName() + "\" needs geometry, this service only computes " + Section.withoutGeometry());
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean requiresGeometry() {
+		return false;
+	}
+}
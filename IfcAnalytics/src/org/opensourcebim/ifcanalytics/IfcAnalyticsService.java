@@ -1,15 +1,17 @@
 package org.opensourcebim.ifcanalytics;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 
 import org.bimserver.bimbots.BimBotContext;
 import org.bimserver.bimbots.BimBotsException;
@@ -17,34 +19,17 @@ import org.bimserver.bimbots.BimBotsInput;
 import org.bimserver.bimbots.BimBotsOutput;
 import org.bimserver.emf.IdEObject;
 import org.bimserver.emf.IfcModelInterface;
-import org.bimserver.models.geometry.Bounds;
 import org.bimserver.models.geometry.GeometryInfo;
-import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
 import org.bimserver.models.ifc2x3tc1.IfcBuilding;
 import org.bimserver.models.ifc2x3tc1.IfcBuildingStorey;
-import org.bimserver.models.ifc2x3tc1.IfcCalendarDate;
-import org.bimserver.models.ifc2x3tc1.IfcClassification;
-import org.bimserver.models.ifc2x3tc1.IfcClassificationNotationSelect;
-import org.bimserver.models.ifc2x3tc1.IfcClassificationReference;
-import org.bimserver.models.ifc2x3tc1.IfcGroup;
-import org.bimserver.models.ifc2x3tc1.IfcMaterial;
-import org.bimserver.models.ifc2x3tc1.IfcMaterialLayer;
-import org.bimserver.models.ifc2x3tc1.IfcMaterialLayerSet;
-import org.bimserver.models.ifc2x3tc1.IfcMaterialLayerSetUsage;
-import org.bimserver.models.ifc2x3tc1.IfcMaterialSelect;
 import org.bimserver.models.ifc2x3tc1.IfcObjectDefinition;
 import org.bimserver.models.ifc2x3tc1.IfcPostalAddress;
-import org.bimserver.models.ifc2x3tc1.IfcProduct;
-import org.bimserver.models.ifc2x3tc1.IfcRelAssigns;
-import org.bimserver.models.ifc2x3tc1.IfcRelAssignsToGroup;
-import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesClassification;
-import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesMaterial;
 import org.bimserver.models.ifc2x3tc1.IfcRelDecomposes;
-import org.bimserver.models.ifc2x3tc1.IfcRoot;
 import org.bimserver.models.ifc2x3tc1.IfcSpace;
 import org.bimserver.models.ifc2x3tc1.IfcZone;
 import org.bimserver.models.store.BooleanType;
 import org.bimserver.models.store.IfcHeader;
+import org.bimserver.models.store.LongType;
 import org.bimserver.models.store.ObjectDefinition;
 import org.bimserver.models.store.ParameterDefinition;
 import org.bimserver.models.store.PrimitiveDefinition;
@@ -52,35 +37,76 @@ import org.bimserver.models.store.PrimitiveEnum;
 import org.bimserver.models.store.StoreFactory;
 import org.bimserver.plugins.PluginConfiguration;
 import org.bimserver.plugins.services.BimBotAbstractService;
-import org.bimserver.plugins.services.BimBotClient;
-import org.bimserver.plugins.services.BimBotExecutionException;
 import org.bimserver.utils.AreaUnit;
-import org.bimserver.utils.IfcUtils;
-import org.bimserver.utils.LengthUnit;
 import org.bimserver.utils.VolumeUnit;
-import org.eclipse.emf.common.util.EList;
-import org.eclipse.emf.ecore.EClass;
+import org.opensourcebim.ifcanalytics.FeatureCache.ClassFeatures;
 import org.eclipse.emf.ecore.EStructuralFeature;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.google.common.base.Charsets;
 
 public class IfcAnalyticsService extends BimBotAbstractService {
 
-	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
-	private static final AreaUnit DEFAULT_AREA_UNIT = AreaUnit.SQUARED_METER;
-	private static final VolumeUnit DEFAULT_VOLUME_UNIT = VolumeUnit.CUBIC_METER;
-	
-	private AreaUnit modelAreaUnit;
-	private VolumeUnit modelVolumeUnit;
-	private LengthUnit modelLengthUnit;
+	static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	static final AreaUnit DEFAULT_AREA_UNIT = AreaUnit.SQUARED_METER;
+	static final VolumeUnit DEFAULT_VOLUME_UNIT = VolumeUnit.CUBIC_METER;
+	private static final int DEFAULT_TOP_LIST_SIZE = 10;
+	private static final int MAX_TOP_LIST_SIZE = 1000;
+	private static final int INVALID_SETTINGS_ERROR_CODE = 1;
+	private static final int UNSUPPORTED_INPUT_ERROR_CODE = 2;
+	private static final long DEFAULT_CLASH_DETECTION_TIMEOUT_SECONDS = 600;
+	private static final int CLASH_DETECTION_THREADS = 4;
+	private static final long DEFAULT_LOCAL_CLASH_TOLERANCE_MM = 10;
+	private static final long DEFAULT_RESULT_CACHE_SIZE_MB = 64;
+	private static final long DEFAULT_RESULT_CACHE_DIRECTORY_SIZE_MB = 1024;
+	// Settings that change the output, parallelism does not
+	// Increase when the output changes in a way that cached results should not be served anymore
+	private static final int RESULT_FORMAT_VERSION = 2;
+	private static final String PLUGIN_VERSION = readPluginVersion();
+	private static final String[] RESULT_BOOLEAN_SETTINGS = { "clashdetectionenabled", "localclashdetection", "diagnostics", "distributions" };
+	private static final String[] RESULT_LONG_SETTINGS = { "clashdetectiontimeout", "localclashtolerance", "toplistsize", "samplerate" };
+	private static final String[] RESULT_STRING_SETTINGS = { "clashdetectionurl", "clashdetectionidentifier", "sections" };
+
+	/**
+	 * The output of one run, incomplete when a part of it, like the remote clash detection, did not finish
+	 */
+	protected static class Analysis {
+		private final byte[] data;
+		private final boolean complete;
+
+		protected Analysis(byte[] data, boolean complete) {
+			this.data = data;
+			this.complete = complete;
+		}
 
-	private int cubesNearZero;
+		public byte[] getData() {
+			return data;
+		}
+
+		public boolean isComplete() {
+			return complete;
+		}
+	}
+
+	private ResultCache resultCache;
+	private SharedPool sharedPool;
+	private ExecutorService clashDetectionExecutor;
+	private final PhaseMeters phaseMeters = new PhaseMeters();
+
+	private static String readPluginVersion() {
+		Properties properties = new Properties();
+		try (InputStream inputStream = IfcAnalyticsService.class.getResourceAsStream("/plugin/version.properties")) {
+			if (inputStream != null) {
+				properties.load(inputStream);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return properties.getProperty("version", "unknown") + "_" + properties.getProperty("build.date", "unknown");
+	}
 
 	public boolean preloadCompleteModel() {
 		return true;
@@ -95,6 +121,9 @@ public class IfcAnalyticsService extends BimBotAbstractService {
 
 		PrimitiveDefinition stringType = StoreFactory.eINSTANCE.createPrimitiveDefinition();
 		stringType.setType(PrimitiveEnum.STRING);
+
+		PrimitiveDefinition longType = StoreFactory.eINSTANCE.createPrimitiveDefinition();
+		longType.setType(PrimitiveEnum.LONG);
 		
 		BooleanType falseValue = StoreFactory.eINSTANCE.createBooleanType();
 		falseValue.setValue(false);
@@ -123,618 +152,662 @@ public class IfcAnalyticsService extends BimBotAbstractService {
 		clashDetectionIdentifier.setIdentifier("clashdetectionidentifier");
 		clashDetectionIdentifier.setType(stringType);
 		settingsDefinition.getParameters().add(clashDetectionIdentifier);
+
+		LongType defaultClashDetectionTimeout = StoreFactory.eINSTANCE.createLongType();
+		defaultClashDetectionTimeout.setValue(DEFAULT_CLASH_DETECTION_TIMEOUT_SECONDS);
+
+		ParameterDefinition clashDetectionTimeout = StoreFactory.eINSTANCE.createParameterDefinition();
+		clashDetectionTimeout.setName("Clash detection timeout");
+		clashDetectionTimeout.setIdentifier("clashdetectiontimeout");
+		clashDetectionTimeout.setDescription("Seconds to wait for the clash detection service, counted from the start of the analysis, 0 to wait until it is done");
+		clashDetectionTimeout.setType(longType);
+		clashDetectionTimeout.setDefaultValue(defaultClashDetectionTimeout);
+		settingsDefinition.getParameters().add(clashDetectionTimeout);
+
+		ParameterDefinition localClashDetection = StoreFactory.eINSTANCE.createParameterDefinition();
+		localClashDetection.setName("Local clash detection");
+		localClashDetection.setIdentifier("localclashdetection");
+		localClashDetection.setDescription("Detect clashes in process on the bounding boxes of the products, instead of calling the clash detection service");
+		localClashDetection.setType(booleanType);
+		localClashDetection.setDefaultValue(falseValue);
+		settingsDefinition.getParameters().add(localClashDetection);
+
+		LongType defaultLocalClashTolerance = StoreFactory.eINSTANCE.createLongType();
+		defaultLocalClashTolerance.setValue(DEFAULT_LOCAL_CLASH_TOLERANCE_MM);
+
+		ParameterDefinition localClashTolerance = StoreFactory.eINSTANCE.createParameterDefinition();
+		localClashTolerance.setName("Local clash tolerance (mm)");
+		localClashTolerance.setIdentifier("localclashtolerance");
+		localClashTolerance.setDescription("Bounding boxes have to overlap more than this on every axis to count as a clash");
+		localClashTolerance.setType(longType);
+		localClashTolerance.setDefaultValue(defaultLocalClashTolerance);
+		settingsDefinition.getParameters().add(localClashTolerance);
+
+		ParameterDefinition sections = StoreFactory.eINSTANCE.createParameterDefinition();
+		sections.setName("Sections");
+		sections.setIdentifier("sections");
+		sections.setDescription("Comma separated list of the sections to compute (header, project, materials, classifications, aggregations, checks), empty computes all");
+		sections.setType(stringType);
+		settingsDefinition.getParameters().add(sections);
+
+		ParameterDefinition parallelism = StoreFactory.eINSTANCE.createParameterDefinition();
+		parallelism.setName("Parallelism");
+		parallelism.setIdentifier("parallelism");
+		parallelism.setDescription("Number of threads used for the product pass, empty or 0 uses all available processors, 1 runs sequentially. The threads come from one pool of this service, concurrent runs share the processors");
+		parallelism.setType(longType);
+		settingsDefinition.getParameters().add(parallelism);
+
+		LongType defaultTopListSize = StoreFactory.eINSTANCE.createLongType();
+		defaultTopListSize.setValue(DEFAULT_TOP_LIST_SIZE);
+
+		ParameterDefinition topListSize = StoreFactory.eINSTANCE.createParameterDefinition();
+		topListSize.setName("Top list size");
+		topListSize.setIdentifier("toplistsize");
+		topListSize.setDescription("Number of objects reported in the most complex objects and most properties lists, at most " + MAX_TOP_LIST_SIZE + ". The lists keep the topTenMostComplexObjects and topTenMostProperties keys for any size");
+		topListSize.setType(longType);
+		topListSize.setDefaultValue(defaultTopListSize);
+		settingsDefinition.getParameters().add(topListSize);
+
+		ParameterDefinition distributions = StoreFactory.eINSTANCE.createParameterDefinition();
+		distributions.setName("Distributions");
+		distributions.setIdentifier("distributions");
+		distributions.setDescription("Add p50, p90, p99 and max of triangles, volume, triangles per m3 and properties per object, per type and for the complete model");
+		distributions.setType(booleanType);
+		distributions.setDefaultValue(falseValue);
+		settingsDefinition.getParameters().add(distributions);
+
+		ParameterDefinition sampleRate = StoreFactory.eINSTANCE.createParameterDefinition();
+		sampleRate.setName("Sample rate (%)");
+		sampleRate.setIdentifier("samplerate");
+		sampleRate.setDescription("Percentage of the products of every type used for the aggregations, with at least 100 per type. The averages and totals become estimates with a 95% confidence interval and the top lists only rank the sample, empty or 100 is exact");
+		sampleRate.setType(longType);
+		settingsDefinition.getParameters().add(sampleRate);
+
+		ParameterDefinition resultCacheEnabled = StoreFactory.eINSTANCE.createParameterDefinition();
+		resultCacheEnabled.setName("Result cache enabled");
+		resultCacheEnabled.setIdentifier("resultcacheenabled");
+		resultCacheEnabled.setDescription("Return the earlier result when the same input is analysed again with the same settings");
+		resultCacheEnabled.setType(booleanType);
+		resultCacheEnabled.setDefaultValue(falseValue);
+		settingsDefinition.getParameters().add(resultCacheEnabled);
+
+		LongType defaultResultCacheSize = StoreFactory.eINSTANCE.createLongType();
+		defaultResultCacheSize.setValue(DEFAULT_RESULT_CACHE_SIZE_MB);
+
+		ParameterDefinition resultCacheSize = StoreFactory.eINSTANCE.createParameterDefinition();
+		resultCacheSize.setName("Result cache size (MB)");
+		resultCacheSize.setIdentifier("resultcachesize");
+		resultCacheSize.setDescription("Memory used for cached results, least recently used results are moved to the result cache directory");
+		resultCacheSize.setType(longType);
+		resultCacheSize.setDefaultValue(defaultResultCacheSize);
+		settingsDefinition.getParameters().add(resultCacheSize);
+
+		ParameterDefinition resultCacheDirectory = StoreFactory.eINSTANCE.createParameterDefinition();
+		resultCacheDirectory.setName("Result cache directory");
+		resultCacheDirectory.setIdentifier("resultcachedirectory");
+		resultCacheDirectory.setDescription("Directory for results evicted from memory, empty to drop them");
+		resultCacheDirectory.setType(stringType);
+		settingsDefinition.getParameters().add(resultCacheDirectory);
+
+		LongType defaultResultCacheDirectorySize = StoreFactory.eINSTANCE.createLongType();
+		defaultResultCacheDirectorySize.setValue(DEFAULT_RESULT_CACHE_DIRECTORY_SIZE_MB);
+
+		ParameterDefinition resultCacheDirectorySize = StoreFactory.eINSTANCE.createParameterDefinition();
+		resultCacheDirectorySize.setName("Result cache directory size (MB)");
+		resultCacheDirectorySize.setIdentifier("resultcachedirectorysize");
+		resultCacheDirectorySize.setDescription("Disk used in the result cache directory, least recently used results are deleted");
+		resultCacheDirectorySize.setType(longType);
+		resultCacheDirectorySize.setDefaultValue(defaultResultCacheDirectorySize);
+		settingsDefinition.getParameters().add(resultCacheDirectorySize);
+
+		ParameterDefinition diagnostics = StoreFactory.eINSTANCE.createParameterDefinition();
+		diagnostics.setName("Diagnostics");
+		diagnostics.setIdentifier("diagnostics");
+		diagnostics.setDescription("Add wall time, cpu time and allocated bytes per phase to the output");
+		diagnostics.setType(booleanType);
+		diagnostics.setDefaultValue(falseValue);
+		settingsDefinition.getParameters().add(diagnostics);
 		
 		return settingsDefinition;
 	}
 	
 	@Override
 	public BimBotsOutput runBimBot(BimBotsInput input, BimBotContext bimBotContext, PluginConfiguration pluginConfiguration) throws BimBotsException {
-		IfcModelInterface model = input.getIfcModel();
-
-		modelLengthUnit = IfcUtils.getLengthUnit(model);
-		modelAreaUnit = IfcUtils.getAreaUnit(model);
-		modelVolumeUnit = IfcUtils.getVolumeUnit(model);
-		
-		ObjectNode result = OBJECT_MAPPER.createObjectNode();
-		result.set("header", proccessIfcHeader(model.getModelMetaData().getIfcHeader()));
-		result.set("project", processProject(model));
-		result.set("materials", processMaterials(model));
-		result.set("classifications", processClassification(model));
-		result.set("aggregations", processAggregations(model));
-		result.set("checks", processChecks(input, pluginConfiguration));
-
-		BimBotsOutput bimBotsOutput = new BimBotsOutput("IFC_ANALYTICS_JSON_1_0", result.toString().getBytes(Charsets.UTF_8));
-		bimBotsOutput.setTitle("Ifc Analytics Results");
-		bimBotsOutput.setContentType("application/json");
-
-		return bimBotsOutput;
-	}
-
-	private ArrayNode callClashDetectionService(BimBotsInput input, String url, String token, String identifier) {
-		try (BimBotClient bimBotClient = new BimBotClient(url, token)) {
-			BimBotsOutput bimBotsOutput = bimBotClient.call(identifier, input);
-			return OBJECT_MAPPER.readValue(bimBotsOutput.getData(), ArrayNode.class);
-		} catch (BimBotExecutionException e) {
-			e.printStackTrace();
-		} catch (JsonParseException e) {
-			e.printStackTrace();
-		} catch (JsonMappingException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+		OutputFormat outputFormat;
+		Set<Section> sections;
+		try {
+			outputFormat = getOutputFormat(pluginConfiguration);
+			sections = getSections(pluginConfiguration);
+		} catch (IllegalArgumentException e) {
+			throw new BimBotsException(e.getMessage(), INVALID_SETTINGS_ERROR_CODE);
 		}
-		return null;
-	}
-
-	private JsonNode processChecks(BimBotsInput input, PluginConfiguration pluginConfiguration) {
-		ObjectNode checksNode = OBJECT_MAPPER.createObjectNode();
-		if (pluginConfiguration.has("clashdetectionenabled")) {
-			if (pluginConfiguration.getBoolean("clashdetectionenabled")) {
-				String url = pluginConfiguration.getString("clashdetectionurl");
-				String identifier = pluginConfiguration.getString("clashdetectionidentifier");
-				String token = pluginConfiguration.getString("clashdetectiontoken");
-				checksNode.set("clashes", callClashDetectionService(input, url, token, identifier));
+		if (pluginConfiguration.has("resultcacheenabled") && Boolean.TRUE.equals(pluginConfiguration.getBoolean("resultcacheenabled")) && input.getData() != null) {
+			ResultCache resultCache = getResultCache(pluginConfiguration);
+			String key = ResultCache.key(input.getData(), getResultSettings(pluginConfiguration));
+			byte[] data = resultCache.get(key);
+			if (data == null) {
+				Analysis analysis = runAnalysis(input, pluginConfiguration, sections);
+				data = analysis.getData();
+				// Timings are only valid for this run, and an incomplete result should be retried the next time
+				if (analysis.isComplete() && !isDiagnosticsEnabled(pluginConfiguration)) {
+					resultCache.put(key, data);
+				}
 			}
+			return createOutput(data, outputFormat);
 		}
-		checksNode.put("hasCubeNearZero", cubesNearZero == 1);
-		return checksNode;
+		return createOutput(runAnalysis(input, pluginConfiguration, sections).getData(), outputFormat);
 	}
 
-	private JsonNode processAggregations(IfcModelInterface model) {
-		ObjectNode aggregations = OBJECT_MAPPER.createObjectNode();
-		ObjectNode perType = OBJECT_MAPPER.createObjectNode();
-		aggregations.set("perType", perType);
-
-		List<ObjectDetails> objects = new ArrayList<>();
-		double totalSpaceM2 = 0;
-		double totalSpaceM3 = 0;
-		int totalNrOfTriangles = 0;
-		
-		long totalNrOfProperties = 0;
-		long totalNrOfRelations = 0;
-		long totalNrOfPsets = 0;
-		int totalNrOfObjects = 0;
-
-		for (EClass ifcProductClass : model.getPackageMetaData().getAllSubClasses(Ifc2x3tc1Package.eINSTANCE.getIfcProduct())) {
-			int totalTypeTriangles = 0;
-			List<IdEObject> products = model.getAll(ifcProductClass);
-			int nrOfObjects = products.size();
-			if (nrOfObjects == 0) {
-				continue;
-			}
-			
-			totalNrOfObjects += nrOfObjects;
-			
-			int totalNrOfTypeTriangles = 0;
-			int totalNrOfTypePsets = 0;
-			int totalNrOfTypeProperties = 0;
-			int totalNrOfTypeRelations = 0;
-			for (IdEObject product : products) {
-				ObjectDetails objectDetails = new ObjectDetails(product);
-				objects.add(objectDetails);
-				GeometryInfo geometry = (GeometryInfo) product.eGet(product.eClass().getEStructuralFeature("geometry"));
-				if (geometry != null) {
-					totalNrOfTypeTriangles += geometry.getPrimitiveCount();
-					totalNrOfTriangles += geometry.getPrimitiveCount();
-					totalTypeTriangles += geometry.getPrimitiveCount();
-					
-					double volumeM3 = VolumeUnit.CUBIC_METER.convert(geometry.getVolume(), modelVolumeUnit);
-					if (volumeM3 > 0.999 && volumeM3 < 1.001) {
-						if (allVerticesWithinOneMeterOfZero(geometry, modelLengthUnit)) {
-							cubesNearZero++;
-						}
-					}
-					
-					objectDetails.setNrTriangles(geometry.getPrimitiveCount());
-					objectDetails.setVolume(DEFAULT_VOLUME_UNIT.convert(geometry.getVolume(), modelVolumeUnit));
-
-					if (ifcProductClass.getName().equals("IfcSpace")) {
-						totalSpaceM2 += DEFAULT_AREA_UNIT.convert(getArea(geometry), modelAreaUnit);
-						totalSpaceM3 += DEFAULT_VOLUME_UNIT.convert(geometry.getVolume(), modelVolumeUnit);
-					}
-				}
-				totalNrOfTypePsets += IfcUtils.getNrOfPSets(product, true);
-				int nrOfProperties = IfcUtils.getNrOfProperties(product);
-				totalNrOfTypeProperties += nrOfProperties;
-				objectDetails.setNrOfProperties(nrOfProperties);
-				totalNrOfTypeRelations += IfcUtils.getNrOfRelations(product);
+	private Analysis runAnalysis(BimBotsInput input, PluginConfiguration pluginConfiguration, Set<Section> sections) throws BimBotsException {
+		try {
+			return analyse(input, pluginConfiguration, sections);
+		} catch (UncheckedIOException e) {
+			if (e.getCause() instanceof UnsupportedIfcException) {
+				throw new BimBotsException(e.getCause().getMessage(), UNSUPPORTED_INPUT_ERROR_CODE);
 			}
-			ObjectNode productNode = OBJECT_MAPPER.createObjectNode();
-			productNode.put("numberOfObjects", nrOfObjects);
-			if (totalNrOfTypeTriangles > 0) {
-				productNode.put("averageNumberOfTriangles", totalTypeTriangles / nrOfObjects);
-			}
-			productNode.put("averageNumberOfPsets", totalNrOfTypePsets / nrOfObjects);
-			productNode.put("averageNumberOfProperties", totalNrOfTypeProperties / nrOfObjects);
-			productNode.put("averageNumberOfRelations", totalNrOfTypeRelations / nrOfObjects);
-			perType.set(ifcProductClass.getName(), productNode);
-			
-			totalNrOfProperties += totalNrOfTypeProperties;
-			totalNrOfRelations += totalNrOfTypeRelations;
-			totalNrOfPsets += totalNrOfTypePsets;
-		}
-
-		objects.sort(new Comparator<ObjectDetails>() {
-			@Override
-			public int compare(ObjectDetails o1, ObjectDetails o2) {
-				return ((Float) o2.getTrianglesPerVolume()).compareTo(o1.getTrianglesPerVolume());
-			}
-		});
-
-		ArrayNode topTenMostComplex = OBJECT_MAPPER.createArrayNode();
-		for (int i = 0; i < 10 && i < objects.size(); i++) {
-			ObjectDetails objectDetails = objects.get(i);
-			ObjectNode objectNode = OBJECT_MAPPER.createObjectNode();
-			objectNode.put("type", objectDetails.getProduct().eClass().getName());
-			putNameAndGuid(objectNode, objectDetails.getProduct());
-			if (objectDetails.getPrimitiveCount() != 0) {
-				objectNode.put("numberOfTriangles", objectDetails.getPrimitiveCount());
-			}
-			if (objectDetails.getVolume() != 0) {
-				objectNode.put("volumeM3", objectDetails.getVolume());
-			}
-			if (!Float.isNaN(objectDetails.getTrianglesPerVolume())) {
-				objectNode.put("trianglesPerM3", objectDetails.getTrianglesPerVolume());
-			}
-			topTenMostComplex.add(objectNode);
+			throw e;
 		}
-		aggregations.set("topTenMostComplexObjects", topTenMostComplex);
+	}
 
-		objects.sort(new Comparator<ObjectDetails>() {
-			@Override
-			public int compare(ObjectDetails o1, ObjectDetails o2) {
-				return o2.getNrOfProperties() - o1.getNrOfProperties();
-			}
-		});
+	private BimBotsOutput createOutput(byte[] data, OutputFormat outputFormat) {
+		BimBotsOutput bimBotsOutput = new BimBotsOutput(outputFormat.getSchema(), data);
+		bimBotsOutput.setTitle("Ifc Analytics Results");
+		bimBotsOutput.setContentType(outputFormat.getContentType());
+		return bimBotsOutput;
+	}
 
-		ArrayNode topTenMostProperties = OBJECT_MAPPER.createArrayNode();
-		for (int i = 0; i < 10 && i < objects.size(); i++) {
-			ObjectDetails objectDetails = objects.get(i);
-			ObjectNode objectNode = OBJECT_MAPPER.createObjectNode();
-			objectNode.put("type", objectDetails.getProduct().eClass().getName());
-			putNameAndGuid(objectNode, objectDetails.getProduct());
-			objectNode.put("numberOfProperties", objectDetails.getNrOfProperties());
-			topTenMostProperties.add(objectNode);
+	/**
+	 * The plugin version and build date are part of the key, so results cached on disk are not served by a newer
+	 * build. RESULT_FORMAT_VERSION covers output changes within one version.
+	 */
+	private String getResultSettings(PluginConfiguration pluginConfiguration) {
+		StringBuilder settings = new StringBuilder(getClass().getName());
+		settings.append('\n').append("pluginversion=").append(PLUGIN_VERSION);
+		settings.append('\n').append("resultformatversion=").append(RESULT_FORMAT_VERSION);
+		for (String identifier : RESULT_BOOLEAN_SETTINGS) {
+			settings.append('\n').append(identifier).append('=').append(pluginConfiguration.has(identifier) ? pluginConfiguration.getBoolean(identifier) : null);
 		}
-		aggregations.set("topTenMostProperties", topTenMostProperties);
-
-		ObjectNode completeModel = OBJECT_MAPPER.createObjectNode();
-		
+		for (String identifier : RESULT_LONG_SETTINGS) {
+			settings.append('\n').append(identifier).append('=').append(pluginConfiguration.has(identifier) ? pluginConfiguration.getLong(identifier) : null);
+		}
+		for (String identifier : RESULT_STRING_SETTINGS) {
+			settings.append('\n').append(identifier).append('=').append(pluginConfiguration.has(identifier) ? pluginConfiguration.getString(identifier) : null);
+		}
+		return settings.toString();
+	}
 
-		completeModel.put("totalTriangles", totalNrOfTriangles);
-		completeModel.put("totalSpaceM2", totalSpaceM2);
-		completeModel.put("totalSpaceM3", totalSpaceM3);
-		
-		completeModel.put("totalNrOfObjects", totalNrOfObjects);
-		completeModel.put("totalNrOfProperties", totalNrOfProperties);
-		completeModel.put("totalNrOfPsets", totalNrOfPsets);
-		completeModel.put("totalNrOfRelations", totalNrOfRelations);
-
-		if (totalSpaceM3 != 0) {
-			double averageNrOfObjectsPerM3 = totalNrOfObjects / totalSpaceM3;
-			if (Double.isFinite(averageNrOfObjectsPerM3)) {
-				completeModel.put("averageNrOfObjectsPerM3", averageNrOfObjectsPerM3);
-			}
-			double averagem3 = totalNrOfTriangles / totalSpaceM3;
-			if (Double.isFinite(averagem3)) {
-				completeModel.put("averageAmountOfTrianglesPerM3", averagem3);
+	/**
+	 * The cache lives as long as this service instance. A new size is applied to the cache in place, only another
+	 * directory replaces it.
+	 */
+	private synchronized ResultCache getResultCache(PluginConfiguration pluginConfiguration) {
+		long maxMemoryBytes = getMegabytes(pluginConfiguration, "resultcachesize", DEFAULT_RESULT_CACHE_SIZE_MB);
+		long maxDiskBytes = getMegabytes(pluginConfiguration, "resultcachedirectorysize", DEFAULT_RESULT_CACHE_DIRECTORY_SIZE_MB);
+		Path spillDirectory = null;
+		if (pluginConfiguration.has("resultcachedirectory")) {
+			String resultCacheDirectory = pluginConfiguration.getString("resultcachedirectory");
+			if (resultCacheDirectory != null && !resultCacheDirectory.trim().isEmpty()) {
+				spillDirectory = Paths.get(resultCacheDirectory.trim());
 			}
 		}
-		if (totalNrOfObjects != 0) {
-			double averageNrOfPropertiesPerObject = (double)totalNrOfProperties / totalNrOfObjects;
-			if (Double.isFinite(averageNrOfPropertiesPerObject)) {
-				completeModel.put("averageNrOfPropertiesPerObject", averageNrOfPropertiesPerObject);
-			}
+		if (resultCache == null || !Objects.equals(resultCache.getSpillDirectory(), spillDirectory)) {
+			resultCache = new ResultCache(maxMemoryBytes, spillDirectory, maxDiskBytes);
+		} else if (resultCache.getMaxMemoryBytes() != maxMemoryBytes || resultCache.getMaxDiskBytes() != maxDiskBytes) {
+			resultCache.resize(maxMemoryBytes, maxDiskBytes);
 		}
-		if (totalSpaceM2 != 0) {
-			double averagem2 = totalNrOfTriangles / totalSpaceM2;
-			if (Double.isFinite(averagem2)) {
-				completeModel.put("averageAmountOfTrianglesPerM2", averagem2);
+		return resultCache;
+	}
+
+	private static long getMegabytes(PluginConfiguration pluginConfiguration, String identifier, long defaultValue) {
+		long megabytes = defaultValue;
+		if (pluginConfiguration.has(identifier)) {
+			Long value = pluginConfiguration.getLong(identifier);
+			if (value != null && value >= 0) {
+				megabytes = value;
 			}
 		}
+		return megabytes * 1024 * 1024;
+	}
 
-		aggregations.set("completeModel", completeModel);
+	/**
+	 * @return Phase totals of the runs with diagnostics enabled
+	 */
+	public PhaseMeters getPhaseMeters() {
+		return phaseMeters;
+	}
 
-		return aggregations;
+	/**
+	 * @return The cache of this service, null when no run has used it yet
+	 */
+	public synchronized ResultCache getResultCache() {
+		return resultCache;
 	}
 
-	private double getArea(GeometryInfo geometryInfo) {
-		if (geometryInfo.getAdditionalData() != null) {
-			try {
-				ObjectNode additionalData = OBJECT_MAPPER.readValue(geometryInfo.getAdditionalData(), ObjectNode.class);
-				if (additionalData.has("WALKABLE_SURFACE_AREA")) {
-					return additionalData.get("WALKABLE_SURFACE_AREA").asDouble();
-				} else if (additionalData.has("SURFACE_AREA_ALONG_Z")) {
-					return additionalData.get("SURFACE_AREA_ALONG_Z").asDouble();
-				}
-			} catch (JsonParseException e) {
-				e.printStackTrace();
-			} catch (JsonMappingException e) {
-				e.printStackTrace();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+	/**
+	 * @return The threads for the parallel parts of all runs of this service, as many as there are processors
+	 */
+	public synchronized SharedPool getSharedPool() {
+		if (sharedPool == null) {
+			sharedPool = new SharedPool(Runtime.getRuntime().availableProcessors());
 		}
-		return geometryInfo.getArea();
+		return sharedPool;
 	}
-	
-	private boolean allVerticesWithinOneMeterOfZero(GeometryInfo geometryInfo, LengthUnit modelLengthUnit) {
-		boolean allVerticesWithin1Meter = true;
-		if (geometryInfo.getData() != null && geometryInfo.getData().getVertices() != null && geometryInfo.getData().getVertices().getData() != null) {
-			FloatBuffer vertices = ByteBuffer.wrap(geometryInfo.getData().getVertices().getData()).asFloatBuffer();
-			for (int i=0; i<vertices.capacity(); i++) {
-				float v = vertices.get(i);
-				float meters = LengthUnit.METER.convert(v, modelLengthUnit);
-				if (meters < -1 || meters > 1) {
-					allVerticesWithin1Meter = false;
-					break;
-				}
-			}
-		} else {
-			Bounds bounds = geometryInfo.getBoundsMm();
-			double[] d = new double[] {
-				bounds.getMin().getX(),
-				bounds.getMin().getY(),
-				bounds.getMin().getZ(),
-				bounds.getMax().getX(),
-				bounds.getMax().getY(),
-				bounds.getMax().getZ()
-			};
-			for (int i=0; i<6; i++) {
-				if (d[i] < -1000 || d[i] > 1000) {
-					allVerticesWithin1Meter = false;
-					break;
-				}
-			}
+
+	/**
+	 * @return The threads that wait for the remote clash detection of all runs of this service
+	 */
+	public synchronized ExecutorService getClashDetectionExecutor() {
+		if (clashDetectionExecutor == null) {
+			clashDetectionExecutor = ClashDetectionCall.createExecutor(CLASH_DETECTION_THREADS);
 		}
-		return allVerticesWithin1Meter;
+		return clashDetectionExecutor;
 	}
 
-	private void putNameAndGuid(ObjectNode objectNode, IdEObject ifcRoot) {
-		EStructuralFeature globalIdFeature = ifcRoot.eClass().getEStructuralFeature("GlobalId");
-		EStructuralFeature nameFeature = ifcRoot.eClass().getEStructuralFeature("Name");
-		String name = (String) ifcRoot.eGet(nameFeature);
-		if (name != null) {
-			objectNode.put("name", name);
+	/**
+	 * Stops the threads of this service when the plugin is unloaded, running clash detection calls are cancelled. A
+	 * later run starts new threads.
+	 */
+	public synchronized void shutdown() {
+		if (sharedPool != null) {
+			sharedPool.shutdown();
+			sharedPool = null;
 		}
-		if (globalIdFeature != null) {
-			String guid = (String) ifcRoot.eGet(globalIdFeature);
-			if (guid != null) {
-				objectNode.put("guid", guid);
-			}
+		if (clashDetectionExecutor != null) {
+			clashDetectionExecutor.shutdownNow();
+			clashDetectionExecutor = null;
 		}
 	}
 
-	private JsonNode processClassification(IfcModelInterface model) {
-		ArrayNode classificationsNode = OBJECT_MAPPER.createArrayNode();
-
-		Map<Long, ObjectNode> classificationMap = new HashMap<>();
-		Map<String, ObjectNode> classificationMapByString = new HashMap<>();
-		Map<String, ObjectNode> classificationReferenceMapByString = new HashMap<>();
+	protected Analysis analyse(BimBotsInput input, PluginConfiguration pluginConfiguration) {
+		return analyse(input, pluginConfiguration, getSections(pluginConfiguration));
+	}
 
-		for (IfcClassification ifcClassification : model.getAll(IfcClassification.class)) {
-			String canonicalName = ifcClassification.getName() + "_" + ifcClassification.getEdition() + "_" + ifcClassification.getSource();
-			ObjectNode classificationNode = OBJECT_MAPPER.createObjectNode();
-			if (ifcClassification.getName() != null) {
-				classificationNode.put("name", ifcClassification.getName());
-			}
-			if (ifcClassification.getEdition() != null) {
-				classificationNode.put("edition", ifcClassification.getEdition());
-			}
-			if (ifcClassification.getSource() != null) {
-				classificationNode.put("source", ifcClassification.getSource());
-			}
-			IfcCalendarDate editionDate = ifcClassification.getEditionDate();
-			if (editionDate != null) {
-				ObjectNode editionDateNode = OBJECT_MAPPER.createObjectNode();
-				editionDateNode.put("yearComponent", editionDate.getYearComponent());
-				editionDateNode.put("monthComponent", editionDate.getMonthComponent());
-				editionDateNode.put("dayComponent", editionDate.getDayComponent());
+	/**
+	 * @param sections The sections setting, parsed by the caller
+	 */
+	protected Analysis analyse(BimBotsInput input, PluginConfiguration pluginConfiguration, Set<Section> sections) {
+		Diagnostics diagnostics = Diagnostics.create(isDiagnosticsEnabled(pluginConfiguration));
+		boolean complete = true;
+		Diagnostics.Phase total = diagnostics.start("total");
+		IfcModelInterface model = input.getIfcModel();
+		AnalysisContext context = new AnalysisContext(model, getParallelism(pluginConfiguration), getTopListSize(pluginConfiguration), sections, pluginConfiguration.has("distributions") && Boolean.TRUE.equals(pluginConfiguration.getBoolean("distributions")), getSampleRate(pluginConfiguration));
 
-				canonicalName += editionDate.getYearComponent() + "_" + editionDate.getMonthComponent() + "_" + editionDate.getDayComponent();
+		boolean localClashDetection = context.has(Section.CHECKS) && pluginConfiguration.has("localclashdetection") && Boolean.TRUE.equals(pluginConfiguration.getBoolean("localclashdetection"));
 
-				classificationNode.set("editionDate", editionDateNode);
+		ClashDetectionCall clashDetectionCall = null;
+		if (context.has(Section.CHECKS) && !localClashDetection && pluginConfiguration.has("clashdetectionenabled")) {
+			if (pluginConfiguration.getBoolean("clashdetectionenabled")) {
+				String url = pluginConfiguration.getString("clashdetectionurl");
+				String identifier = pluginConfiguration.getString("clashdetectionidentifier");
+				String token = pluginConfiguration.getString("clashdetectiontoken");
+				clashDetectionCall = ClashDetectionCall.start(getClashDetectionExecutor(), createClashDetection(input, url, token, identifier), getClashDetectionTimeout(pluginConfiguration) * 1000, diagnostics.add("clashDetection"));
 			}
+		}
+		
+		AnalyticsEngine engine = new AnalyticsEngine(model, context.getFeatureCache(), context.getParallelism(), getSharedPool());
+		MaterialsAccumulator materials = null;
+		if (context.has(Section.MATERIALS)) {
+			Diagnostics.Phase phase = diagnostics.start("materialsIndex");
+			materials = engine.register(new MaterialsAccumulator(model, context.getFeatureCache()));
+			phase.stop();
+		}
+		ClassificationsAccumulator classifications = null;
+		if (context.has(Section.CLASSIFICATIONS)) {
+			Diagnostics.Phase phase = diagnostics.start("classificationsIndex");
+			classifications = engine.register(new ClassificationsAccumulator(model));
+			phase.stop();
+		}
+		List<ModelCheck> modelChecks = context.has(Section.CHECKS) ? ChecksAccumulator.loadChecks() : Collections.<ModelCheck>emptyList();
+		PropertyIndex propertyIndex = null;
+		if (context.has(Section.AGGREGATIONS) || ChecksAccumulator.needsPsets(modelChecks)) {
+			Diagnostics.Phase phase = diagnostics.start("propertyIndex");
+			// The checks look at every product, the aggregations alone only at the sample
+			propertyIndex = PropertyIndex.build(model, ChecksAccumulator.needsPsets(modelChecks) ? null : context.getSample());
+			phase.stop();
+		}
+		AggregationsAccumulator aggregations = null;
+		if (context.has(Section.AGGREGATIONS)) {
+			aggregations = engine.register(new AggregationsAccumulator(context, propertyIndex));
+		}
+		ChecksAccumulator checks = null;
+		if (context.has(Section.CHECKS)) {
+			checks = engine.register(new ChecksAccumulator(context, modelChecks, propertyIndex));
+		}
+		LocalClashDetector localClashDetector = null;
+		if (localClashDetection) {
+			localClashDetector = engine.register(new LocalClashDetector(model, context.getFeatureCache(), getLocalClashTolerance(pluginConfiguration), context.getParallelism(), getSharedPool()));
+		}
+		Diagnostics.Phase productsPhase = diagnostics.start("products");
+		productsPhase.stop(engine.run(productsPhase));
+
+		if (localClashDetector != null) {
+			Diagnostics.Phase phase = diagnostics.start("localClashDetection");
+			ArrayNode clashes = localClashDetector.detectClashes();
+			checks.setClashes(clashes, localClashDetector.getNrOfClashes());
+			phase.stop(clashes.size());
+		}
 
-			ArrayNode referencesNode = OBJECT_MAPPER.createArrayNode();
-			classificationNode.set("references", referencesNode);
-
-			if (classificationMapByString.containsKey(canonicalName)) {
-				classificationNode = classificationMapByString.get(canonicalName);
-			} else {
-				classificationMapByString.put(canonicalName, classificationNode);
-				classificationsNode.add(classificationNode);
-			}
-			classificationMap.put(ifcClassification.getOid(), classificationNode);
+		ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder();
+		try (JsonGenerator generator = getOutputFormat(pluginConfiguration).createGenerator(byteArrayBuilder)) {
+			generator.writeStartObject();
+			if (context.has(Section.HEADER)) {
+				Diagnostics.Phase phase = diagnostics.start(Section.HEADER.getFieldName());
+				generator.writeFieldName(Section.HEADER.getFieldName());
+				writeIfcHeader(generator, model.getModelMetaData().getIfcHeader());
+				phase.stop();
+			}
+			if (context.has(Section.PROJECT)) {
+				Diagnostics.Phase phase = diagnostics.start(Section.PROJECT.getFieldName());
+				generator.writeFieldName(Section.PROJECT.getFieldName());
+				writeProject(generator, context);
+				phase.stop();
+			}
+			if (materials != null) {
+				Diagnostics.Phase phase = diagnostics.start(Section.MATERIALS.getFieldName());
+				generator.writeFieldName(Section.MATERIALS.getFieldName());
+				materials.write(generator);
+				phase.stop();
+			}
+			if (classifications != null) {
+				Diagnostics.Phase phase = diagnostics.start(Section.CLASSIFICATIONS.getFieldName());
+				generator.writeFieldName(Section.CLASSIFICATIONS.getFieldName());
+				classifications.write(generator);
+				phase.stop();
+			}
+			if (aggregations != null) {
+				Diagnostics.Phase phase = diagnostics.start(Section.AGGREGATIONS.getFieldName());
+				generator.writeFieldName(Section.AGGREGATIONS.getFieldName());
+				aggregations.write(generator);
+				phase.stop();
+			}
+			if (checks != null) {
+				if (clashDetectionCall != null) {
+					Diagnostics.Phase phase = diagnostics.start("clashDetectionWait");
+					JsonNode clashes = clashDetectionCall.getResult();
+					// A timeout status or a failed call instead of the list of clashes
+					complete = clashes instanceof ArrayNode;
+					checks.setClashes(clashes);
+					phase.stop();
+				}
+				Diagnostics.Phase phase = diagnostics.start(Section.CHECKS.getFieldName());
+				generator.writeFieldName(Section.CHECKS.getFieldName());
+				checks.write(generator);
+				phase.stop();
+			}
+			total.stop();
+			if (diagnostics.isEnabled()) {
+				generator.writeFieldName("diagnostics");
+				diagnostics.write(generator);
+				phaseMeters.record(diagnostics);
+			}
+			generator.writeEndObject();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 
-		ObjectNode noClassification = OBJECT_MAPPER.createObjectNode();
-		noClassification.put("name", "NO_CLASSIFICATION");
-		noClassification.set("references", OBJECT_MAPPER.createArrayNode());
-		classificationsNode.add(noClassification);
+		return new Analysis(byteArrayBuilder.toByteArray(), complete);
+	}
 
-		ObjectNode noClassificationReference = OBJECT_MAPPER.createObjectNode();
-		noClassificationReference.put("name", "NO_CLASSIFICATION_REFERENCE");
-		noClassificationReference.put("numberOfObjects", 0);
-		((ArrayNode)noClassification.get("references")).add(noClassificationReference);
-		
-		Map<Long, ObjectNode> classificationReferences = new HashMap<>();
-
-		for (IfcClassificationReference ifcClassificationReference : model.getAllWithSubTypes(IfcClassificationReference.class)) {
-			IfcClassification referencedSource = ifcClassificationReference.getReferencedSource();
-			ObjectNode classificationNode = null;
-			if (referencedSource == null) {
-				classificationNode = noClassification;
-			} else {
-				classificationNode = classificationMap.get(referencedSource.getOid());
-			}
+	/**
+	 * The remote clash detection bot, tests replace it with a local stand-in
+	 */
+	protected Callable<JsonNode> createClashDetection(BimBotsInput input, String url, String token, String identifier) {
+		return ClashDetectionCall.remote(input, url, token, identifier);
+	}
 
-			String canonicalName = ifcClassificationReference.getLocation() + "_" + ifcClassificationReference.getItemReference() + "_" + ifcClassificationReference.getName();
-			ObjectNode classificationReferenceNode = null;
-			if (classificationReferenceMapByString.containsKey(canonicalName)) {
-				classificationReferenceNode = classificationReferenceMapByString.get(canonicalName);
-			} else {
-				classificationReferenceNode = OBJECT_MAPPER.createObjectNode();
-				if (ifcClassificationReference.getLocation() != null) {
-					classificationReferenceNode.put("location", ifcClassificationReference.getLocation());
-				}
-				if (ifcClassificationReference.getItemReference() != null) {
-					classificationReferenceNode.put("itemReference", ifcClassificationReference.getItemReference());
-				}
-				if (ifcClassificationReference.getName() != null) {
-					classificationReferenceNode.put("name", ifcClassificationReference.getName());
-				}
-				classificationReferenceNode.put("numberOfObjects", 0);
-				classificationReferenceMapByString.put(canonicalName, classificationReferenceNode);
-				((ArrayNode) classificationNode.get("references")).add(classificationReferenceNode);
-			}
+	private static boolean isDiagnosticsEnabled(PluginConfiguration pluginConfiguration) {
+		return pluginConfiguration.has("diagnostics") && Boolean.TRUE.equals(pluginConfiguration.getBoolean("diagnostics"));
+	}
 
-			classificationReferences.put(ifcClassificationReference.getOid(), classificationReferenceNode);
-		}
-		
-		Set<Long> set = new HashSet<>();
-
-		for (IfcRelAssociatesClassification ifcRelAssociatesClassification : model.getAll(IfcRelAssociatesClassification.class)) {
-			IfcClassificationNotationSelect relatingClassification = ifcRelAssociatesClassification.getRelatingClassification();
-			if (relatingClassification instanceof IfcClassificationReference) {
-				IfcClassificationReference ifcClassificationReference = (IfcClassificationReference) relatingClassification;
-				ObjectNode classificationReferenceNode = classificationReferences.get(ifcClassificationReference.getOid());
-				EList<IfcRoot> relatedObjects = ifcRelAssociatesClassification.getRelatedObjects();
-				for (IfcRoot ifcRoot : relatedObjects) {
-					set.add(ifcRoot.getOid());
-				}
-				classificationReferenceNode.put("numberOfObjects", classificationReferenceNode.get("numberOfObjects").asInt() + relatedObjects.size());
-			}
-		}
-		
-		for (IfcProduct ifcProduct : model.getAllWithSubTypes(IfcProduct.class)) {
-			if (!set.contains(ifcProduct.getOid())) {
-				noClassificationReference.put("numberOfObjects", noClassificationReference.get("numberOfObjects").asInt() + 1);
-			}
-		}
+	protected Set<Section> getSections(String sections) {
+		return Section.parse(sections);
+	}
 
-		return classificationsNode;
+	protected Set<Section> getSections(PluginConfiguration pluginConfiguration) {
+		return getSections(pluginConfiguration.has("sections") ? pluginConfiguration.getString("sections") : null);
 	}
 
-	private JsonNode processMaterials(IfcModelInterface model) {
-		ArrayNode materialsNode = OBJECT_MAPPER.createArrayNode();
+	/**
+	 * The format is a property of the service, so the output always has the schema the service is registered with
+	 */
+	protected OutputFormat getOutputFormat() {
+		return OutputFormat.JSON;
+	}
 
-		Map<Long, ObjectNode> materialNodes = new HashMap<>();
+	protected OutputFormat getOutputFormat(PluginConfiguration pluginConfiguration) {
+		return getOutputFormat();
+	}
 
-		for (IfcMaterial ifcMaterial : model.getAll(IfcMaterial.class)) {
-			ObjectNode materialNode = OBJECT_MAPPER.createObjectNode();
-			putNameAndGuid(materialNode, ifcMaterial);
-			materialNode.put("nrOfProducts", 0);
-			materialNodes.put(ifcMaterial.getOid(), materialNode);
-			materialsNode.add(materialNode);
+	private int getParallelism(PluginConfiguration pluginConfiguration) {
+		if (pluginConfiguration.has("parallelism")) {
+			Long parallelism = pluginConfiguration.getLong("parallelism");
+			if (parallelism != null && parallelism > 0) {
+				return parallelism.intValue();
+			}
 		}
+		return Runtime.getRuntime().availableProcessors();
+	}
 
-		Set<Long> objectsWithMaterial = new HashSet<>();
-
-		for (IfcRelAssociatesMaterial ifcRelAssociatesMaterial : model.getAll(IfcRelAssociatesMaterial.class)) {
-			EList<IfcRoot> objects = ifcRelAssociatesMaterial.getRelatedObjects();
-			for (IfcRoot object : objects) {
-				objectsWithMaterial.add(object.getOid());
+	private double getSampleRate(PluginConfiguration pluginConfiguration) {
+		if (pluginConfiguration.has("samplerate")) {
+			Long sampleRate = pluginConfiguration.getLong("samplerate");
+			if (sampleRate != null && sampleRate > 0 && sampleRate < 100) {
+				return sampleRate / 100.0;
 			}
-			IfcMaterialSelect relatingMaterial = ifcRelAssociatesMaterial.getRelatingMaterial();
-			if (relatingMaterial instanceof IfcMaterial) {
-				ObjectNode materialNode = materialNodes.get(relatingMaterial.getOid());
-				materialNode.put("nrOfProducts", materialNode.get("nrOfProducts").asInt() + objects.size());
-			} else if (relatingMaterial instanceof IfcMaterialLayerSetUsage) {
-				IfcMaterialLayerSetUsage ifcMaterialLayerSetUsage = (IfcMaterialLayerSetUsage) relatingMaterial;
-				IfcMaterialLayerSet forLayerSet = ifcMaterialLayerSetUsage.getForLayerSet();
-				for (IfcMaterialLayer ifcMaterialLayer : forLayerSet.getMaterialLayers()) {
-					IfcMaterial ifcMaterial = ifcMaterialLayer.getMaterial();
-					ObjectNode materialNode = materialNodes.get(ifcMaterial.getOid());
-					materialNode.put("nrOfProducts", materialNode.get("nrOfProducts").asInt() + objects.size());
-				}
-			} else {
-//				LOGGER.info("To implement: " + relatingMaterial);
+		}
+		return 1;
+	}
+
+	private long getClashDetectionTimeout(PluginConfiguration pluginConfiguration) {
+		if (pluginConfiguration.has("clashdetectiontimeout")) {
+			Long clashDetectionTimeout = pluginConfiguration.getLong("clashdetectiontimeout");
+			if (clashDetectionTimeout != null && clashDetectionTimeout >= 0) {
+				return clashDetectionTimeout;
 			}
 		}
+		return DEFAULT_CLASH_DETECTION_TIMEOUT_SECONDS;
+	}
 
-		ObjectNode noMaterialNode = OBJECT_MAPPER.createObjectNode();
-		noMaterialNode.put("name", "NO_MATERIAL");
-		materialsNode.add(noMaterialNode);
-		int objectsWithoutMaterial = 0;
-		for (IfcProduct ifcProduct : model.getAllWithSubTypes(IfcProduct.class)) {
-			if (!objectsWithMaterial.contains(ifcProduct.getOid())) {
-				objectsWithoutMaterial++;
+	private long getLocalClashTolerance(PluginConfiguration pluginConfiguration) {
+		if (pluginConfiguration.has("localclashtolerance")) {
+			Long localClashTolerance = pluginConfiguration.getLong("localclashtolerance");
+			if (localClashTolerance != null && localClashTolerance >= 0) {
+				return localClashTolerance;
 			}
 		}
-		noMaterialNode.put("nrOfProducts", objectsWithoutMaterial);
+		return DEFAULT_LOCAL_CLASH_TOLERANCE_MM;
+	}
 
-		return materialsNode;
+	private int getTopListSize(PluginConfiguration pluginConfiguration) {
+		if (pluginConfiguration.has("toplistsize")) {
+			Long topListSize = pluginConfiguration.getLong("toplistsize");
+			if (topListSize != null && topListSize >= 0) {
+				return (int) Math.min(topListSize, MAX_TOP_LIST_SIZE);
+			}
+		}
+		return DEFAULT_TOP_LIST_SIZE;
 	}
 
-	private JsonNode processProject(IfcModelInterface model) {
+	private void writeProject(JsonGenerator generator, AnalysisContext context) throws IOException {
+		IfcModelInterface model = context.getModel();
+		FeatureCache featureCache = context.getFeatureCache();
 		IdEObject ifcProject = model.getFirst(model.getPackageMetaData().getEClass("IfcProject"));
 		if (ifcProject == null) {
-			return null;
+			generator.writeNull();
+			return;
 		}
-		ObjectNode projectNode = OBJECT_MAPPER.createObjectNode();
-		putNameAndGuid(projectNode, ifcProject);
-		IdEObject unitInContext = (IdEObject) ifcProject.eGet(ifcProject.eClass().getEStructuralFeature("UnitsInContext"));
+		generator.writeStartObject();
+		featureCache.writeNameAndGuid(generator, ifcProject);
+		IdEObject unitInContext = (IdEObject) ifcProject.eGet(featureCache.get(ifcProject.eClass()).getUnitsInContext());
 		
 		if (unitInContext != null) {
-			ArrayNode unitsNode = OBJECT_MAPPER.createArrayNode();
-			List<IdEObject> units = (List<IdEObject>) unitInContext.eGet(unitInContext.eClass().getEStructuralFeature("Units"));
+			generator.writeArrayFieldStart("units");
+			List<IdEObject> units = (List<IdEObject>) unitInContext.eGet(featureCache.get(unitInContext.eClass()).getUnits());
 			for (IdEObject unit : units) {
-				ObjectNode unitNode = OBJECT_MAPPER.createObjectNode();
-				EStructuralFeature unitTypeFeature = unit.eClass().getEStructuralFeature("UnitType");
+				generator.writeStartObject();
+				ClassFeatures unitFeatures = featureCache.get(unit.eClass());
+				EStructuralFeature unitTypeFeature = unitFeatures.getUnitType();
 				if (unitTypeFeature != null) {
 					Object unitType = unit.eGet(unitTypeFeature);
 					if (unitType != null) {
-						unitNode.put("unitType", unitType.toString());
+						generator.writeStringField("unitType", unitType.toString());
 					}
 				}
-				EStructuralFeature nameFeature = unit.eClass().getEStructuralFeature("Name");
+				EStructuralFeature nameFeature = unitFeatures.getName();
 				if (nameFeature != null) {
 					Object name = unit.eGet(nameFeature);
 					if (name != null) {
-						unitNode.put("name", name.toString());
+						generator.writeStringField("name", name.toString());
 					}
 				}
-				EStructuralFeature prefixFeature = unit.eClass().getEStructuralFeature("Prefix");
+				EStructuralFeature prefixFeature = unitFeatures.getPrefix();
 				if (prefixFeature != null) {
 					Object prefix = unit.eGet(prefixFeature);
 					if (prefix != null) {
-						unitNode.put("prefix", prefix.toString());
+						generator.writeStringField("prefix", prefix.toString());
 					}
 				}
-				unitsNode.add(unitNode);
+				generator.writeEndObject();
 			}
-			projectNode.set("units", unitsNode);
+			generator.writeEndArray();
 		}
 
-		List<IdEObject> isDecomposedBy = (List<IdEObject>) ifcProject.eGet(ifcProject.eClass().getEStructuralFeature("IsDecomposedBy"));
-		ArrayNode sitesNode = OBJECT_MAPPER.createArrayNode();
+		SpatialRollup spatialRollup = new SpatialRollup(context);
+		List<IdEObject> isDecomposedBy = (List<IdEObject>) ifcProject.eGet(featureCache.get(ifcProject.eClass()).getIsDecomposedBy());
+		generator.writeArrayFieldStart("sites");
 		for (IdEObject ifcRelDecomposes : isDecomposedBy) {
-			List<IdEObject> sites = (List<IdEObject>) ifcRelDecomposes.eGet(ifcRelDecomposes.eClass().getEStructuralFeature("RelatedObjects"));
+			List<IdEObject> sites = (List<IdEObject>) ifcRelDecomposes.eGet(featureCache.get(ifcRelDecomposes.eClass()).getRelatedObjects());
 			for (IdEObject ifcSite : sites) {
-				sitesNode.add(processSite(model, ifcSite));
+				writeSite(generator, context, spatialRollup, ifcSite);
 			}
 		}
-		projectNode.set("sites", sitesNode);
-		return projectNode;
+		generator.writeEndArray();
+		generator.writeEndObject();
 	}
 
-	private ObjectNode processBuilding(IfcModelInterface model, IfcBuilding ifcBuilding) {
+	private void writeBuilding(JsonGenerator generator, AnalysisContext context, SpatialRollup spatialRollup, IfcBuilding ifcBuilding) throws IOException {
+		FeatureCache featureCache = context.getFeatureCache();
 		IfcPostalAddress buildingAddress = ifcBuilding.getBuildingAddress();
 		if (buildingAddress != null) {
 
 		}
-		ObjectNode buildingNode = OBJECT_MAPPER.createObjectNode();
+		generator.writeStartObject();
 
-		putNameAndGuid(buildingNode, ifcBuilding);
+		featureCache.writeNameAndGuid(generator, ifcBuilding);
+		writeTotals(generator, featureCache, spatialRollup.get(ifcBuilding));
 
-		ArrayNode storeysNode = OBJECT_MAPPER.createArrayNode();
-		buildingNode.set("storeys", storeysNode);
+		generator.writeArrayFieldStart("storeys");
 
 		for (IfcRelDecomposes ifcRelDecomposes : ifcBuilding.getIsDecomposedBy()) {
 			for (IfcObjectDefinition ifcObjectDefinition : ifcRelDecomposes.getRelatedObjects()) {
 				if (ifcObjectDefinition instanceof IfcBuildingStorey) {
 					IfcBuildingStorey ifcBuildingStorey = (IfcBuildingStorey) ifcObjectDefinition;
-					int numberOfObjectsInStorey = IfcUtils.countDecomposed(ifcBuildingStorey);
+					generator.writeStartObject();
+					featureCache.writeNameAndGuid(generator, ifcBuildingStorey);
+					generator.writeNumberField("totalNumberOfObjects", spatialRollup.get(ifcBuildingStorey).getNrOfObjects());
+					writeZones(generator, featureCache, spatialRollup.get(ifcBuildingStorey).getZones());
 
-					ObjectNode buildingStoreyNode = OBJECT_MAPPER.createObjectNode();
-					putNameAndGuid(buildingStoreyNode, ifcBuildingStorey);
-					buildingStoreyNode.put("totalNumberOfObjects", numberOfObjectsInStorey);
-
-					ArrayNode spacesNode = OBJECT_MAPPER.createArrayNode();
+					generator.writeArrayFieldStart("spaces");
 					for (IfcRelDecomposes ifcRelDecomposes2 : ifcBuildingStorey.getIsDecomposedBy()) {
 						for (IfcObjectDefinition ifcObjectDefinition2 : ifcRelDecomposes2.getRelatedObjects()) {
 							if (ifcObjectDefinition2 instanceof IfcSpace) {
 								IfcSpace ifcSpace = (IfcSpace) ifcObjectDefinition2;
-								ObjectNode spaceNode = OBJECT_MAPPER.createObjectNode();
-								putNameAndGuid(spaceNode, ifcSpace);
+								generator.writeStartObject();
+								featureCache.writeNameAndGuid(generator, ifcSpace);
 								GeometryInfo spaceGeometry = ifcSpace.getGeometry();
 								if (spaceGeometry != null) {
-									spaceNode.put("m2", DEFAULT_AREA_UNIT.convert(getArea(spaceGeometry), modelAreaUnit));
-									spaceNode.put("m3", DEFAULT_VOLUME_UNIT.convert(spaceGeometry.getVolume(), modelVolumeUnit));
-								}
-								ArrayNode zonesNode = OBJECT_MAPPER.createArrayNode();
-								for (IfcRelAssigns ifcRelAssigns : ifcSpace.getHasAssignments()) {
-									if (ifcRelAssigns instanceof IfcRelAssignsToGroup) {
-										IfcRelAssignsToGroup ifcRelAssignsToGroup = (IfcRelAssignsToGroup) ifcRelAssigns;
-										IfcGroup relatingGroup = ifcRelAssignsToGroup.getRelatingGroup();
-										if (relatingGroup instanceof IfcZone) {
-											IfcZone ifcZone = (IfcZone) relatingGroup;
-											ObjectNode zoneNode = OBJECT_MAPPER.createObjectNode();
-											putNameAndGuid(zoneNode, ifcZone);
-											zonesNode.add(zoneNode);
-										}
-									}
+									generator.writeNumberField("m2", DEFAULT_AREA_UNIT.convert(context.getAreaCache().getArea(spaceGeometry), context.getAreaUnit()));
+									generator.writeNumberField("m3", DEFAULT_VOLUME_UNIT.convert(spaceGeometry.getVolume(), context.getVolumeUnit()));
 								}
-								if (zonesNode.size() > 0) {
-									spaceNode.set("zones", zonesNode);
-								}
-								spacesNode.add(spaceNode);
+								writeZones(generator, featureCache, spatialRollup.get(ifcSpace).getZones());
+								generator.writeEndObject();
 							}
 						}
 					}
-					buildingStoreyNode.set("spaces", spacesNode);
+					generator.writeEndArray();
 
-					storeysNode.add(buildingStoreyNode);
+					generator.writeEndObject();
 				}
 			}
 		}
-		return buildingNode;
+		generator.writeEndArray();
+		generator.writeEndObject();
 	}
 
-	private JsonNode processSite(IfcModelInterface model, IdEObject ifcSite) {
-		ObjectNode siteNode = OBJECT_MAPPER.createObjectNode();
-		putNameAndGuid(siteNode, ifcSite);
+	private void writeSite(JsonGenerator generator, AnalysisContext context, SpatialRollup spatialRollup, IdEObject ifcSite) throws IOException {
+		FeatureCache featureCache = context.getFeatureCache();
+		generator.writeStartObject();
+		featureCache.writeNameAndGuid(generator, ifcSite);
+		writeTotals(generator, featureCache, spatialRollup.get((IfcObjectDefinition) ifcSite));
 
-		ArrayNode buildingsNode = OBJECT_MAPPER.createArrayNode();
-		List<IdEObject> isDecomposedBy = (List<IdEObject>) ifcSite.eGet(ifcSite.eClass().getEStructuralFeature("IsDecomposedBy"));
+		generator.writeArrayFieldStart("buildings");
+		List<IdEObject> isDecomposedBy = (List<IdEObject>) ifcSite.eGet(featureCache.get(ifcSite.eClass()).getIsDecomposedBy());
 		for (IdEObject ifcRelDecomposes : isDecomposedBy) {
-			List<IdEObject> relatedObjects = (List<IdEObject>) ifcRelDecomposes.eGet(ifcRelDecomposes.eClass().getEStructuralFeature("RelatedObjects"));
+			List<IdEObject> relatedObjects = (List<IdEObject>) ifcRelDecomposes.eGet(featureCache.get(ifcRelDecomposes.eClass()).getRelatedObjects());
 			for (IdEObject ifcBuilding : relatedObjects) {
-				buildingsNode.add(processBuilding(model, (IfcBuilding) ifcBuilding));
+				writeBuilding(generator, context, spatialRollup, (IfcBuilding) ifcBuilding);
 			}
 		}
-		siteNode.set("buildings", buildingsNode);
+		generator.writeEndArray();
+
+		generator.writeEndObject();
+	}
 
-		return siteNode;
+	private void writeTotals(JsonGenerator generator, FeatureCache featureCache, SpatialRollup.Totals totals) throws IOException {
+		generator.writeNumberField("totalNumberOfObjects", totals.getNrOfObjects());
+		generator.writeNumberField("totalNumberOfTriangles", totals.getNrOfTriangles());
+		generator.writeNumberField("totalSpaceM2", totals.getSpaceM2());
+		generator.writeNumberField("totalSpaceM3", totals.getSpaceM3());
+		writeZones(generator, featureCache, totals.getZones());
 	}
 
-	private ObjectNode proccessIfcHeader(IfcHeader ifcHeader) {
-		ObjectNode headerNode = OBJECT_MAPPER.createObjectNode();
+	private void writeZones(JsonGenerator generator, FeatureCache featureCache, Set<IfcZone> zones) throws IOException {
+		if (!zones.isEmpty()) {
+			generator.writeArrayFieldStart("zones");
+			for (IfcZone ifcZone : zones) {
+				generator.writeStartObject();
+				featureCache.writeNameAndGuid(generator, ifcZone);
+				generator.writeEndObject();
+			}
+			generator.writeEndArray();
+		}
+	}
 
-		ArrayNode authorsNode = OBJECT_MAPPER.createArrayNode();
-		headerNode.set("author", authorsNode);
+	private void writeIfcHeader(JsonGenerator generator, IfcHeader ifcHeader) throws IOException {
+		generator.writeStartObject();
 
+		generator.writeArrayFieldStart("author");
 		for (String author : ifcHeader.getAuthor()) {
-			authorsNode.add(author);
+			generator.writeString(author);
 		}
+		generator.writeEndArray();
 
-		headerNode.put("authorization", ifcHeader.getAuthorization());
-		ArrayNode descriptionsNode = OBJECT_MAPPER.createArrayNode();
+		generator.writeStringField("authorization", ifcHeader.getAuthorization());
+		generator.writeArrayFieldStart("description");
 		for (String description : ifcHeader.getDescription()) {
-			descriptionsNode.add(description);
+			generator.writeString(description);
 		}
-		headerNode.set("description", descriptionsNode);
+		generator.writeEndArray();
 
-		headerNode.put("filename", ifcHeader.getFilename());
-		headerNode.put("schemaVersion", ifcHeader.getIfcSchemaVersion());
-		headerNode.put("implementationLevel", ifcHeader.getImplementationLevel());
+		generator.writeStringField("filename", ifcHeader.getFilename());
+		generator.writeStringField("schemaVersion", ifcHeader.getIfcSchemaVersion());
+		generator.writeStringField("implementationLevel", ifcHeader.getImplementationLevel());
 
-		ArrayNode organizationsNode = OBJECT_MAPPER.createArrayNode();
+		generator.writeArrayFieldStart("organization");
 		for (String organization : ifcHeader.getOrganization()) {
-			organizationsNode.add(organization);
+			generator.writeString(organization);
 		}
-		headerNode.set("organization", organizationsNode);
-		headerNode.put("originatingSystem", ifcHeader.getOriginatingSystem());
-		headerNode.put("preProcessorVersion", ifcHeader.getPreProcessorVersion());
-		headerNode.put("timeStamp", ifcHeader.getTimeStamp().getTime());
+		generator.writeEndArray();
+		generator.writeStringField("originatingSystem", ifcHeader.getOriginatingSystem());
+		generator.writeStringField("preProcessorVersion", ifcHeader.getPreProcessorVersion());
+		generator.writeNumberField("timeStamp", ifcHeader.getTimeStamp().getTime());
 
-		return headerNode;
+		generator.writeEndObject();
 	}
 
 	@Override
 	public String getOutputSchema() {
-		return "IFC_ANALYTICS_JSON_1_0";
+		return getOutputFormat().getSchema();
 	}
 
 	@Override
@@ -0,0 +1,13 @@
+package org.opensourcebim.ifcanalytics;
+
+/**
+ * The same analysis as IfcAnalyticsService, written as Smile (binary JSON with the same structure) under its own
+ * schema IFC_ANALYTICS_SMILE_1_0
+ */
+public class IfcAnalyticsSmileService extends IfcAnalyticsService {
+
+	@Override
+	protected OutputFormat getOutputFormat() {
+		return OutputFormat.SMILE;
+	}
+}
@@ -0,0 +1,58 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Set;
+
+import org.bimserver.bimbots.BimBotsInput;
+import org.bimserver.plugins.PluginConfiguration;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+/**
+ * Computes the sections that need no geometry directly from the raw STEP input, without a model
+ */
+public class IfcAnalyticsStreamingService extends IfcAnalyticsNonGeometricService {
+
+	@Override
+	public boolean preloadCompleteModel() {
+		return false;
+	}
+
+	@Override
+	protected Analysis analyse(BimBotsInput input, PluginConfiguration pluginConfiguration, Set<Section> sections) {
+		try (InputStream inputStream = openInput(input)) {
+			return analyse(inputStream, pluginConfiguration, sections);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * BIMserver hands a bot its input as one array, override this to read the file from where it is stored instead,
+	 * for example through a file channel, so its size is not limited by the heap
+	 */
+	protected InputStream openInput(BimBotsInput input) throws IOException {
+		return new ByteArrayInputStream(input.getData());
+	}
+
+	/**
+	 * Reads the file once through the stream, only the output is kept in memory
+	 */
+	public Analysis analyse(InputStream inputStream, PluginConfiguration pluginConfiguration) throws IOException {
+		return analyse(inputStream, pluginConfiguration, getSections(pluginConfiguration));
+	}
+
+	private Analysis analyse(InputStream inputStream, PluginConfiguration pluginConfiguration, Set<Section> sections) throws IOException {
+		StepAnalyser stepAnalyser = new StepAnalyser(sections);
+		stepAnalyser.analyse(inputStream);
+		ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder();
+		try (JsonGenerator generator = getOutputFormat(pluginConfiguration).createGenerator(byteArrayBuilder)) {
+			stepAnalyser.write(generator);
+		}
+		return new Analysis(byteArrayBuilder.toByteArray(), true);
+	}
+}
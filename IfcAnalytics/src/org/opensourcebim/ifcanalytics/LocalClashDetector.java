@@ -0,0 +1,312 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.geometry.Bounds;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.geometry.Vector3f;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.models.ifc2x3tc1.IfcElement;
+import org.bimserver.models.ifc2x3tc1.IfcObjectDefinition;
+import org.bimserver.models.ifc2x3tc1.IfcOpeningElement;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.bimserver.models.ifc2x3tc1.IfcRelDecomposes;
+import org.bimserver.models.ifc2x3tc1.IfcRelFillsElement;
+import org.eclipse.emf.ecore.EClass;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * In process broad phase clash detection on the world bounds of the products, as an alternative to sending the
+ * whole model to a remote clash detection bot.
+ *
+ * The bounds are collected during the product pass in primitive columns. Detection sorts the boxes on their minimum
+ * x and sweeps along x, the sweep is split into ranges that run in parallel and are concatenated in order. Two boxes
+ * clash when they overlap by more than the tolerance on all three axes. Spatial structure elements and openings
+ * are left out, they overlap with their contents by definition, and so are the pairs that overlap by design: hosts
+ * and the elements filling their openings, and aggregates and their parts.
+ *
+ * The bounds are stored as floats relative to the minimum corner of the first product with geometry, so
+ * georeferenced coordinates keep sub millimeter precision.
+ */
+public class LocalClashDetector implements ProductAccumulator<LocalClashDetector> {
+
+	private static final int MAX_CLASHES = 100000;
+	private static final int SWEEP_RANGE_SIZE = 8192;
+
+	private final IfcModelInterface model;
+	private final FeatureCache featureCache;
+	private final float toleranceMm;
+	private final int parallelism;
+	private final SharedPool sharedPool;
+	private final double[] origin;
+	private final OidPairSet relatedOids;
+
+	private int size;
+	private long[] oids = new long[1024];
+	private float[] bounds = new float[1024 * 6];
+
+	private long nrOfClashes;
+
+	/**
+	 * The clashing pairs of one sweep range, at most MAX_CLASHES, and the number of pairs found
+	 */
+	private static class SweepResult {
+		private final int[] pairs;
+		private final long nrOfPairs;
+
+		private SweepResult(int[] pairs, long nrOfPairs) {
+			this.pairs = pairs;
+			this.nrOfPairs = nrOfPairs;
+		}
+	}
+
+	/**
+	 * @param sharedPool Runs the sweep when parallelism is more than 1, may be null otherwise
+	 */
+	public LocalClashDetector(IfcModelInterface model, FeatureCache featureCache, float toleranceMm, int parallelism, SharedPool sharedPool) {
+		this(model, featureCache, toleranceMm, parallelism, sharedPool, findOrigin(model), findRelatedOids(model));
+	}
+
+	private LocalClashDetector(IfcModelInterface model, FeatureCache featureCache, float toleranceMm, int parallelism, SharedPool sharedPool, double[] origin, OidPairSet relatedOids) {
+		this.model = model;
+		this.featureCache = featureCache;
+		this.toleranceMm = toleranceMm;
+		this.parallelism = parallelism;
+		this.sharedPool = sharedPool;
+		this.origin = origin;
+		this.relatedOids = relatedOids;
+	}
+
+	private static double[] findOrigin(IfcModelInterface model) {
+		for (IfcProduct ifcProduct : model.getAllWithSubTypes(IfcProduct.class)) {
+			GeometryInfo geometry = ifcProduct.getGeometry();
+			if (geometry != null && geometry.getBoundsMm() != null) {
+				Vector3f min = geometry.getBoundsMm().getMin();
+				return new double[] { min.getX(), min.getY(), min.getZ() };
+			}
+		}
+		return new double[3];
+	}
+
+	/**
+	 * @return The pairs of elements that overlap by design: hosts and the elements filling their openings, and element
+	 *         aggregates and their parts. Spatial structure elements are not in the sweep, so their decomposition is
+	 *         left out.
+	 */
+	private static OidPairSet findRelatedOids(IfcModelInterface model) {
+		OidPairSet relatedOids = new OidPairSet();
+		for (IfcRelFillsElement ifcRelFillsElement : model.getAll(IfcRelFillsElement.class)) {
+			IfcOpeningElement opening = ifcRelFillsElement.getRelatingOpeningElement();
+			if (opening != null && opening.getVoidsElements() != null && ifcRelFillsElement.getRelatedBuildingElement() != null) {
+				IfcElement host = opening.getVoidsElements().getRelatingBuildingElement();
+				if (host != null) {
+					relatedOids.add(host.getOid(), ifcRelFillsElement.getRelatedBuildingElement().getOid());
+				}
+			}
+		}
+		for (IfcRelDecomposes ifcRelDecomposes : model.getAllWithSubTypes(IfcRelDecomposes.class)) {
+			if (ifcRelDecomposes.getRelatingObject() instanceof IfcElement) {
+				for (IfcObjectDefinition part : ifcRelDecomposes.getRelatedObjects()) {
+					if (part instanceof IfcElement) {
+						relatedOids.add(ifcRelDecomposes.getRelatingObject().getOid(), part.getOid());
+					}
+				}
+			}
+		}
+		return relatedOids;
+	}
+
+	private boolean related(int row1, int row2) {
+		return relatedOids.size() > 0 && relatedOids.contains(oids[row1], oids[row2]);
+	}
+
+	@Override
+	public boolean needsGeometry(IdEObject product) {
+		return !excluded(product.eClass());
+	}
+
+	@Override
+	public void visit(IdEObject product, GeometryInfo geometry) {
+		if (geometry == null || geometry.getBoundsMm() == null || excluded(product.eClass())) {
+			return;
+		}
+		if (size == oids.length) {
+			oids = Arrays.copyOf(oids, size * 2);
+			bounds = Arrays.copyOf(bounds, size * 2 * 6);
+		}
+		Bounds boundsMm = geometry.getBoundsMm();
+		oids[size] = product.getOid();
+		int offset = size * 6;
+		bounds[offset] = (float) (boundsMm.getMin().getX() - origin[0]);
+		bounds[offset + 1] = (float) (boundsMm.getMin().getY() - origin[1]);
+		bounds[offset + 2] = (float) (boundsMm.getMin().getZ() - origin[2]);
+		bounds[offset + 3] = (float) (boundsMm.getMax().getX() - origin[0]);
+		bounds[offset + 4] = (float) (boundsMm.getMax().getY() - origin[1]);
+		bounds[offset + 5] = (float) (boundsMm.getMax().getZ() - origin[2]);
+		size++;
+	}
+
+	private static boolean excluded(EClass eClass) {
+		return Ifc2x3tc1Package.eINSTANCE.getIfcSpatialStructureElement().isSuperTypeOf(eClass) || Ifc2x3tc1Package.eINSTANCE.getIfcFeatureElementSubtraction().isSuperTypeOf(eClass);
+	}
+
+	@Override
+	public LocalClashDetector createPartition() {
+		return new LocalClashDetector(model, featureCache, toleranceMm, parallelism, sharedPool, origin, relatedOids);
+	}
+
+	@Override
+	public void merge(LocalClashDetector partition) {
+		if (size + partition.size > oids.length) {
+			int capacity = Math.max(size + partition.size, oids.length * 2);
+			oids = Arrays.copyOf(oids, capacity);
+			bounds = Arrays.copyOf(bounds, capacity * 6);
+		}
+		System.arraycopy(partition.oids, 0, oids, size, partition.size);
+		System.arraycopy(partition.bounds, 0, bounds, size * 6, partition.size * 6);
+		size += partition.size;
+	}
+
+	/**
+	 * @return The first MAX_CLASHES clashing pairs as a flat list of rows, in sweep order
+	 */
+	private int[] detect() {
+		final int[] order = sortOnMinX();
+		List<Callable<SweepResult>> ranges = new ArrayList<>();
+		for (int start = 0; start < size; start += SWEEP_RANGE_SIZE) {
+			final int from = start;
+			final int to = Math.min(size, start + SWEEP_RANGE_SIZE);
+			ranges.add(new Callable<SweepResult>() {
+				@Override
+				public SweepResult call() throws Exception {
+					return sweep(order, from, to);
+				}
+			});
+		}
+		List<SweepResult> results = new ArrayList<>();
+		if (parallelism <= 1 || ranges.size() <= 1) {
+			for (Callable<SweepResult> range : ranges) {
+				try {
+					results.add(range.call());
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		} else {
+			try {
+				results.addAll(sharedPool.invokeAll(ranges, parallelism));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
+		long total = 0;
+		nrOfClashes = 0;
+		for (SweepResult result : results) {
+			total += result.pairs.length;
+			nrOfClashes += result.nrOfPairs;
+		}
+		int[] clashes = new int[(int) Math.min(total, MAX_CLASHES * 2)];
+		int offset = 0;
+		for (SweepResult result : results) {
+			int length = Math.min(result.pairs.length, clashes.length - offset);
+			System.arraycopy(result.pairs, 0, clashes, offset, length);
+			offset += length;
+		}
+		return clashes;
+	}
+
+	private int[] sortOnMinX() {
+		// Sortable bits of the minimum x in the high half, the row in the low half
+		long[] keys = new long[size];
+		for (int row = 0; row < size; row++) {
+			int bits = Float.floatToIntBits(bounds[row * 6]);
+			bits ^= (bits >> 31) & 0x7fffffff;
+			keys[row] = ((long) bits << 32) | row;
+		}
+		Arrays.parallelSort(keys);
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	private SweepResult sweep(int[] order, int from, int to) {
+		int[] pairs = new int[16];
+		int nrOfStoredPairs = 0;
+		// Counting goes on past MAX_CLASHES, so the total is known when the list is truncated
+		long nrOfPairs = 0;
+		for (int i = from; i < to; i++) {
+			int a = order[i] * 6;
+			float maxX = bounds[a + 3] - toleranceMm;
+			for (int j = i + 1; j < size; j++) {
+				int b = order[j] * 6;
+				if (bounds[b] >= maxX) {
+					break;
+				}
+				if (overlaps(a, b, 0) && overlaps(a, b, 1) && overlaps(a, b, 2) && !related(order[i], order[j])) {
+					nrOfPairs++;
+					if (nrOfStoredPairs < MAX_CLASHES * 2) {
+						if (nrOfStoredPairs + 2 > pairs.length) {
+							pairs = Arrays.copyOf(pairs, pairs.length * 2);
+						}
+						pairs[nrOfStoredPairs++] = order[i];
+						pairs[nrOfStoredPairs++] = order[j];
+					}
+				}
+			}
+		}
+		return new SweepResult(Arrays.copyOf(pairs, nrOfStoredPairs), nrOfPairs);
+	}
+
+	private boolean overlaps(int a, int b, int axis) {
+		return Math.min(bounds[a + 3 + axis], bounds[b + 3 + axis]) - Math.max(bounds[a + axis], bounds[b + axis]) > toleranceMm;
+	}
+
+	public ArrayNode detectClashes() {
+		int[] pairs = detect();
+		ArrayNode clashesNode = IfcAnalyticsService.OBJECT_MAPPER.createArrayNode();
+		for (int i = 0; i < pairs.length; i += 2) {
+			IdEObject product1 = model.get(oids[pairs[i]]);
+			IdEObject product2 = model.get(oids[pairs[i + 1]]);
+			ObjectNode clashNode = IfcAnalyticsService.OBJECT_MAPPER.createObjectNode();
+			putProduct(clashNode, "1", product1);
+			putProduct(clashNode, "2", product2);
+			clashesNode.add(clashNode);
+		}
+		return clashesNode;
+	}
+
+	/**
+	 * @return Number of clashing pairs found by the last detectClashes, also the ones beyond MAX_CLASHES
+	 */
+	public long getNrOfClashes() {
+		return nrOfClashes;
+	}
+
+	private void putProduct(ObjectNode clashNode, String suffix, IdEObject product) {
+		clashNode.put("type" + suffix, product.eClass().getName());
+		String guid = (String) product.eGet(featureCache.get(product.eClass()).getGlobalId());
+		if (guid != null) {
+			clashNode.put("guid" + suffix, guid);
+		}
+	}
+
+	@Override
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeTree(detectClashes());
+	}
+}
@@ -0,0 +1,103 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from oid to count, without boxing. Missing keys count as 0. Not thread safe for writes, fill it
+ * before handing it to other threads.
+ */
+public class LongIntHashMap {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+
+	public LongIntHashMap() {
+		this(16);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	public int get(long key) {
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			long current = keys[slot];
+			if (current == key) {
+				return values[slot];
+			}
+			if (current == EMPTY) {
+				return 0;
+			}
+		}
+	}
+
+	public boolean containsKey(long key) {
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			long current = keys[slot];
+			if (current == key) {
+				return true;
+			}
+			if (current == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	public void addTo(long key, int delta) {
+		if (key == EMPTY) {
+			throw new IllegalArgumentException("Key " + key + " is reserved");
+		}
+		int mask = keys.length - 1;
+		for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+			long current = keys[slot];
+			if (current == key) {
+				values[slot] += delta;
+				return;
+			}
+			if (current == EMPTY) {
+				keys[slot] = key;
+				values[slot] = delta;
+				if (++size * 2 > keys.length) {
+					grow();
+				}
+				return;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new long[oldKeys.length * 2];
+		values = new int[oldValues.length * 2];
+		Arrays.fill(keys, EMPTY);
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = hash(oldKeys[i]) & mask;
+				while (keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,24 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Arrays;
+
+public class LongList {
+
+	private long[] values = new long[16];
+	private int size;
+
+	public void add(long value) {
+		if (size == values.length) {
+			values = Arrays.copyOf(values, size * 2);
+		}
+		values[size++] = value;
+	}
+
+	public long get(int index) {
+		return values[index];
+	}
+
+	public int size() {
+		return size;
+	}
+}
@@ -0,0 +1,122 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.ifc2x3tc1.IfcMaterial;
+import org.bimserver.models.ifc2x3tc1.IfcMaterialLayer;
+import org.bimserver.models.ifc2x3tc1.IfcMaterialLayerSet;
+import org.bimserver.models.ifc2x3tc1.IfcMaterialLayerSetUsage;
+import org.bimserver.models.ifc2x3tc1.IfcMaterialSelect;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesMaterial;
+import org.bimserver.models.ifc2x3tc1.IfcRoot;
+import org.eclipse.emf.common.util.EList;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+public class MaterialsAccumulator implements ProductAccumulator<MaterialsAccumulator> {
+
+	private final FeatureCache featureCache;
+	private final List<IfcMaterial> materials;
+	private final int[] nrOfProducts;
+	private final OidSet objectsWithMaterial;
+	private int objectsWithoutMaterial;
+
+	private MaterialsAccumulator(MaterialsAccumulator parent) {
+		this.featureCache = null;
+		this.materials = null;
+		this.nrOfProducts = null;
+		this.objectsWithMaterial = parent.objectsWithMaterial;
+	}
+
+	public MaterialsAccumulator(IfcModelInterface model, FeatureCache featureCache) {
+		this.featureCache = featureCache;
+		materials = model.getAll(IfcMaterial.class);
+		nrOfProducts = new int[materials.size()];
+		objectsWithMaterial = new OidSet();
+		// Indexes in materials are stored + 1, a missing oid reads as 0
+		LongIntHashMap materialIndexes = new LongIntHashMap(materials.size());
+		for (int i = 0; i < materials.size(); i++) {
+			materialIndexes.addTo(materials.get(i).getOid(), i + 1);
+		}
+		// Layer sets are shared by many usages, they are expanded to material indexes once
+		Map<IfcMaterialLayerSet, int[]> layerSetMaterials = new IdentityHashMap<>();
+
+		for (IfcRelAssociatesMaterial ifcRelAssociatesMaterial : model.getAll(IfcRelAssociatesMaterial.class)) {
+			EList<IfcRoot> objects = ifcRelAssociatesMaterial.getRelatedObjects();
+			for (IfcRoot object : objects) {
+				objectsWithMaterial.add(object.getOid());
+			}
+			IfcMaterialSelect relatingMaterial = ifcRelAssociatesMaterial.getRelatingMaterial();
+			if (relatingMaterial instanceof IfcMaterial) {
+				addProducts(materialIndexes.get(relatingMaterial.getOid()) - 1, objects.size());
+			} else if (relatingMaterial instanceof IfcMaterialLayerSetUsage) {
+				IfcMaterialLayerSet forLayerSet = ((IfcMaterialLayerSetUsage) relatingMaterial).getForLayerSet();
+				int[] indexes = layerSetMaterials.get(forLayerSet);
+				if (indexes == null) {
+					EList<IfcMaterialLayer> materialLayers = forLayerSet.getMaterialLayers();
+					indexes = new int[materialLayers.size()];
+					for (int i = 0; i < indexes.length; i++) {
+						IfcMaterial ifcMaterial = materialLayers.get(i).getMaterial();
+						indexes[i] = ifcMaterial == null ? -1 : materialIndexes.get(ifcMaterial.getOid()) - 1;
+					}
+					layerSetMaterials.put(forLayerSet, indexes);
+				}
+				for (int index : indexes) {
+					addProducts(index, objects.size());
+				}
+			} else {
+//				LOGGER.info("To implement: " + relatingMaterial);
+			}
+		}
+	}
+
+	private void addProducts(int materialIndex, int nrOfObjects) {
+		if (materialIndex != -1) {
+			nrOfProducts[materialIndex] += nrOfObjects;
+		}
+	}
+
+	@Override
+	public boolean needsGeometry(IdEObject product) {
+		return false;
+	}
+
+	@Override
+	public void visit(IdEObject product, GeometryInfo geometry) {
+		if (!objectsWithMaterial.contains(product.getOid())) {
+			objectsWithoutMaterial++;
+		}
+	}
+
+	@Override
+	public MaterialsAccumulator createPartition() {
+		return new MaterialsAccumulator(this);
+	}
+
+	@Override
+	public void merge(MaterialsAccumulator partition) {
+		objectsWithoutMaterial += partition.objectsWithoutMaterial;
+	}
+
+	@Override
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeStartArray();
+		for (int i = 0; i < materials.size(); i++) {
+			generator.writeStartObject();
+			featureCache.writeNameAndGuid(generator, materials.get(i));
+			generator.writeNumberField("nrOfProducts", nrOfProducts[i]);
+			generator.writeEndObject();
+		}
+		generator.writeStartObject();
+		generator.writeStringField("name", "NO_MATERIAL");
+		generator.writeNumberField("nrOfProducts", objectsWithoutMaterial);
+		generator.writeEndObject();
+		generator.writeEndArray();
+	}
+}
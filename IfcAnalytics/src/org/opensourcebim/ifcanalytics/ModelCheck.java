@@ -0,0 +1,43 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Set;
+
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * A quality check on single products, evaluated by the {@link ChecksAccumulator} during the one product pass of the
+ * {@link AnalyticsEngine}, together with all other checks.
+ *
+ * Besides the built in checks, implementations are found with {@link java.util.ServiceLoader}, list them in
+ * META-INF/services/org.opensourcebim.ifcanalytics.ModelCheck. Checks are called from several threads at once and
+ * should not keep state between calls.
+ */
+public interface ModelCheck {
+
+	/**
+	 * The data a check reads besides the attributes of the product, only what one of the checks on a type asks for is
+	 * loaded
+	 */
+	enum Data {
+		BOUNDS,
+		VERTICES,
+		PSETS
+	}
+
+	/**
+	 * @return Field name of the check in the output
+	 */
+	String getName();
+
+	/**
+	 * @return The checked type, subtypes included
+	 */
+	EClass getType();
+
+	Set<Data> getData();
+
+	/**
+	 * @return true when the product fails the check
+	 */
+	boolean isOffender(CheckedProduct product);
+}
@@ -0,0 +1,203 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Summarises all IFC files in a directory without a BIMserver, for re-analysing archives after an upgrade. Every file
+ * gets a result next to its relative path in the output directory, and a report.json with the throughput.
+ *
+ * The files are read with StepAnalyser, so this is a non geometric summary: only the header, materials and
+ * classifications sections, the same as IfcAnalyticsStreamingService. The project, aggregations and checks need a
+ * model with geometry and are only available from the BIMserver services.
+ *
+ * A fixed number of workers each analyse one file at a time. StepAnalyser streams the file and only keeps primitive
+ * oids, so the heap needed grows with the number of workers and the products per file, not with the file size. Files
+ * that are not IFC2x3 are skipped and counted separately.
+ *
+ * Usage: NonGeometricBatchAnalyser inputDirectory outputDirectory [--parallelism=n] [--sections=a,b]
+ * [--outputformat=json|smile]
+ */
+public class NonGeometricBatchAnalyser {
+
+	private final Path inputDirectory;
+	private final Path outputDirectory;
+	private int parallelism = Runtime.getRuntime().availableProcessors();
+	private Set<Section> sections = Section.withoutGeometry();
+	private OutputFormat outputFormat = OutputFormat.JSON;
+
+	private final AtomicInteger nrOfModels = new AtomicInteger();
+	private final AtomicInteger nrOfFailures = new AtomicInteger();
+	private final AtomicInteger nrOfSkipped = new AtomicInteger();
+	private final LongAdder nrOfObjects = new LongAdder();
+	private final LongAdder nrOfBytes = new LongAdder();
+
+	public NonGeometricBatchAnalyser(Path inputDirectory, Path outputDirectory) {
+		this.inputDirectory = inputDirectory;
+		this.outputDirectory = outputDirectory;
+	}
+
+	public NonGeometricBatchAnalyser setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * @param sections Sections to compute, only the ones that need no geometry
+	 */
+	public NonGeometricBatchAnalyser setSections(Set<Section> sections) {
+		for (Section section : sections) {
+			if (section.needsGeometry()) {
+				throw new IllegalArgumentException("Section \"" + section.getFieldName() + "\" needs geometry, a batch summary only computes " + Section.withoutGeometry());
+			}
+		}
+		this.sections = sections;
+		return this;
+	}
+
+	public NonGeometricBatchAnalyser setOutputFormat(OutputFormat outputFormat) {
+		this.outputFormat = outputFormat;
+		return this;
+	}
+
+	public void run() throws IOException, InterruptedException {
+		final List<Path> files = new ArrayList<>();
+		Files.walkFileTree(inputDirectory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+				if (attributes.isRegularFile() && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".ifc")) {
+					files.add(file);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Collections.sort(files);
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			memoryPool.resetPeakUsage();
+		}
+		long start = System.nanoTime();
+		ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+		try {
+			for (final Path file : files) {
+				executorService.execute(new Runnable() {
+					@Override
+					public void run() {
+						analyse(file);
+					}
+				});
+			}
+		} finally {
+			executorService.shutdown();
+			executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		}
+		writeReport(System.nanoTime() - start);
+	}
+
+	private void analyse(Path file) {
+		Path relativePath = inputDirectory.relativize(file);
+		Path outputFile = outputDirectory.resolve(relativePath.toString() + "." + outputFormat.name().toLowerCase(Locale.ROOT));
+		try {
+			StepAnalyser stepAnalyser = new StepAnalyser(sections);
+			try (InputStream inputStream = Files.newInputStream(file)) {
+				stepAnalyser.analyse(inputStream);
+			}
+			Files.createDirectories(outputFile.getParent());
+			try (OutputStream outputStream = Files.newOutputStream(outputFile)) {
+				try (JsonGenerator generator = outputFormat.createGenerator(outputStream)) {
+					stepAnalyser.write(generator);
+				}
+			}
+			nrOfObjects.add(stepAnalyser.getNrOfProducts());
+			nrOfBytes.add(Files.size(file));
+			nrOfModels.incrementAndGet();
+		} catch (UnsupportedIfcException e) {
+			System.err.println("Skipped " + relativePath + ": " + e.getMessage());
+			nrOfSkipped.incrementAndGet();
+		} catch (Exception e) {
+			System.err.println("Failed to analyse " + relativePath);
+			e.printStackTrace();
+			nrOfFailures.incrementAndGet();
+		}
+	}
+
+	private void writeReport(long wallTime) throws IOException {
+		double seconds = Math.max(wallTime, 1) / 1e9;
+		long peakHeap = 0;
+		for (MemoryPoolMXBean memoryPool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (memoryPool.getType() == MemoryType.HEAP && memoryPool.getPeakUsage() != null) {
+				peakHeap += memoryPool.getPeakUsage().getUsed();
+			}
+		}
+		Files.createDirectories(outputDirectory);
+		try (JsonGenerator generator = IfcAnalyticsService.OBJECT_MAPPER.getFactory().createGenerator(Files.newOutputStream(outputDirectory.resolve("report.json")))) {
+			generator.useDefaultPrettyPrinter();
+			generator.writeStartObject();
+			generator.writeNumberField("models", nrOfModels.get());
+			generator.writeNumberField("failures", nrOfFailures.get());
+			generator.writeNumberField("skipped", nrOfSkipped.get());
+			generator.writeNumberField("objects", nrOfObjects.sum());
+			generator.writeNumberField("bytes", nrOfBytes.sum());
+			generator.writeNumberField("seconds", seconds);
+			generator.writeNumberField("modelsPerSecond", nrOfModels.get() / seconds);
+			generator.writeNumberField("objectsPerSecond", nrOfObjects.sum() / seconds);
+			generator.writeNumberField("megabytesPerSecond", nrOfBytes.sum() / seconds / (1024 * 1024));
+			generator.writeNumberField("peakHeapBytes", peakHeap);
+			generator.writeNumberField("parallelism", parallelism);
+			generator.writeEndObject();
+		}
+		System.out.println(String.format("%d models (%d failed, %d skipped), %d objects in %.1f s: %.1f models/s, %.0f objects/s, peak heap %d MB", nrOfModels.get(), nrOfFailures.get(), nrOfSkipped.get(), nrOfObjects.sum(), seconds, nrOfModels.get() / seconds, nrOfObjects.sum() / seconds, peakHeap / (1024 * 1024)));
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> paths = new ArrayList<>();
+		List<String> options = new ArrayList<>();
+		for (String arg : args) {
+			(arg.startsWith("--") ? options : paths).add(arg);
+		}
+		if (paths.size() != 2) {
+			System.err.println("Usage: NonGeometricBatchAnalyser inputDirectory outputDirectory [--parallelism=n] [--sections=a,b] [--outputformat=json|smile]");
+			System.exit(1);
+		}
+		NonGeometricBatchAnalyser batchAnalyser = new NonGeometricBatchAnalyser(Paths.get(paths.get(0)), Paths.get(paths.get(1)));
+		for (String option : options) {
+			String[] nameAndValue = option.substring(2).split("=", 2);
+			String value = nameAndValue.length == 2 ? nameAndValue[1] : "";
+			switch (nameAndValue[0]) {
+			case "parallelism":
+				batchAnalyser.setParallelism(Integer.parseInt(value));
+				break;
+			case "sections":
+				batchAnalyser.setSections(value.trim().isEmpty() ? Section.withoutGeometry() : Section.parse(value));
+				break;
+			case "outputformat":
+				batchAnalyser.setOutputFormat(OutputFormat.parse(value));
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option \"" + option + "\"");
+			}
+		}
+		batchAnalyser.run();
+	}
+}
@@ -0,0 +1,91 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing set of unordered oid pairs, without boxing. Not thread safe for writes, fill it before handing it
+ * to other threads.
+ */
+public class OidPairSet {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] firsts;
+	private long[] seconds;
+	private int size;
+
+	public OidPairSet() {
+		this(16);
+	}
+
+	public OidPairSet(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+		firsts = new long[capacity];
+		seconds = new long[capacity];
+		Arrays.fill(firsts, EMPTY);
+	}
+
+	public boolean add(long oid1, long oid2) {
+		long first = Math.min(oid1, oid2);
+		long second = Math.max(oid1, oid2);
+		if (first == EMPTY) {
+			throw new IllegalArgumentException("Key " + first + " is reserved");
+		}
+		int mask = firsts.length - 1;
+		for (int slot = hash(first, second) & mask; ; slot = (slot + 1) & mask) {
+			if (firsts[slot] == first && seconds[slot] == second) {
+				return false;
+			}
+			if (firsts[slot] == EMPTY) {
+				firsts[slot] = first;
+				seconds[slot] = second;
+				if (++size * 2 > firsts.length) {
+					grow();
+				}
+				return true;
+			}
+		}
+	}
+
+	public boolean contains(long oid1, long oid2) {
+		long first = Math.min(oid1, oid2);
+		long second = Math.max(oid1, oid2);
+		int mask = firsts.length - 1;
+		for (int slot = hash(first, second) & mask; ; slot = (slot + 1) & mask) {
+			if (firsts[slot] == first && seconds[slot] == second) {
+				return true;
+			}
+			if (firsts[slot] == EMPTY) {
+				return false;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		long[] oldFirsts = firsts;
+		long[] oldSeconds = seconds;
+		firsts = new long[oldFirsts.length * 2];
+		seconds = new long[oldSeconds.length * 2];
+		Arrays.fill(firsts, EMPTY);
+		int mask = firsts.length - 1;
+		for (int i = 0; i < oldFirsts.length; i++) {
+			if (oldFirsts[i] != EMPTY) {
+				int slot = hash(oldFirsts[i], oldSeconds[i]) & mask;
+				while (firsts[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				firsts[slot] = oldFirsts[i];
+				seconds[slot] = oldSeconds[i];
+			}
+		}
+	}
+
+	private static int hash(long first, long second) {
+		long h = first * 0x9E3779B97F4A7C15L + second * 0xC2B2AE3D27D4EB4FL;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,98 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Arrays;
+
+/**
+ * Set of oids in the style of a roaring bitmap. Oids are grouped by their high 48 bits, a group holds its low 16 bits
+ * in a sorted char array while it is small and in a 8 KB bitmap once it has more than 4096 members. Not thread safe
+ * for writes, fill it before handing it to other threads.
+ */
+public class OidSet {
+
+	private static final int MAX_ARRAY_SIZE = 4096;
+
+	private final LongIntHashMap containerIndexes = new LongIntHashMap();
+	private char[][] arrays = new char[16][];
+	private long[][] bitmaps = new long[16][];
+	private int[] sizes = new int[16];
+	private int nrOfContainers;
+	private int size;
+
+	public boolean add(long oid) {
+		long high = oid >>> 16;
+		char low = (char) oid;
+		int index = containerIndexes.get(high) - 1;
+		if (index == -1) {
+			index = createContainer(high);
+		}
+		boolean added;
+		if (bitmaps[index] != null) {
+			long[] bitmap = bitmaps[index];
+			long bit = 1L << low;
+			added = (bitmap[low >>> 6] & bit) == 0;
+			bitmap[low >>> 6] |= bit;
+		} else {
+			added = addToArray(index, low);
+		}
+		if (added) {
+			sizes[index]++;
+			size++;
+		}
+		return added;
+	}
+
+	private int createContainer(long high) {
+		if (nrOfContainers == sizes.length) {
+			arrays = Arrays.copyOf(arrays, nrOfContainers * 2);
+			bitmaps = Arrays.copyOf(bitmaps, nrOfContainers * 2);
+			sizes = Arrays.copyOf(sizes, nrOfContainers * 2);
+		}
+		int index = nrOfContainers++;
+		arrays[index] = new char[4];
+		containerIndexes.addTo(high, index + 1);
+		return index;
+	}
+
+	private boolean addToArray(int index, char low) {
+		char[] array = arrays[index];
+		int containerSize = sizes[index];
+		int position = Arrays.binarySearch(array, 0, containerSize, low);
+		if (position >= 0) {
+			return false;
+		}
+		if (containerSize == MAX_ARRAY_SIZE) {
+			long[] bitmap = new long[1024];
+			for (int i = 0; i < containerSize; i++) {
+				bitmap[array[i] >>> 6] |= 1L << array[i];
+			}
+			bitmap[low >>> 6] |= 1L << low;
+			bitmaps[index] = bitmap;
+			arrays[index] = null;
+			return true;
+		}
+		position = -position - 1;
+		if (containerSize == array.length) {
+			array = Arrays.copyOf(array, Math.min(MAX_ARRAY_SIZE, containerSize * 2));
+			arrays[index] = array;
+		}
+		System.arraycopy(array, position, array, position + 1, containerSize - position);
+		array[position] = low;
+		return true;
+	}
+
+	public boolean contains(long oid) {
+		int index = containerIndexes.get(oid >>> 16) - 1;
+		if (index == -1) {
+			return false;
+		}
+		char low = (char) oid;
+		if (bitmaps[index] != null) {
+			return (bitmaps[index][low >>> 6] & (1L << low)) != 0;
+		}
+		return Arrays.binarySearch(arrays[index], 0, sizes[index], low) >= 0;
+	}
+
+	public int size() {
+		return size;
+	}
+}
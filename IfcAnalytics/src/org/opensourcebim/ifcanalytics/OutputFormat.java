@@ -0,0 +1,64 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Encodings of the analytics output. All formats have the same logical structure, Smile is the binary form of JSON
+ * and is smaller and faster to parse for clients that read many results.
+ */
+public enum OutputFormat {
+	JSON("json", "IFC_ANALYTICS_JSON_1_0", "application/json", IfcAnalyticsService.OBJECT_MAPPER),
+	SMILE("smile", "IFC_ANALYTICS_SMILE_1_0", "application/x-jackson-smile", new ObjectMapper(new SmileFactory()));
+
+	private final String identifier;
+	private final String schema;
+	private final String contentType;
+	private final ObjectMapper objectMapper;
+
+	private OutputFormat(String identifier, String schema, String contentType, ObjectMapper objectMapper) {
+		this.identifier = identifier;
+		this.schema = schema;
+		this.contentType = contentType;
+		this.objectMapper = objectMapper;
+	}
+
+	public String getSchema() {
+		return schema;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return The mapper to read output of this format with
+	 */
+	public ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	public JsonGenerator createGenerator(OutputStream outputStream) throws IOException {
+		return objectMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8);
+	}
+
+	/**
+	 * @param identifier Format name, null or empty for JSON
+	 */
+	public static OutputFormat parse(String identifier) {
+		if (identifier == null || identifier.trim().isEmpty()) {
+			return JSON;
+		}
+		for (OutputFormat outputFormat : values()) {
+			if (outputFormat.identifier.equalsIgnoreCase(identifier.trim())) {
+				return outputFormat;
+			}
+		}
+		throw new IllegalArgumentException("Unknown output format \"" + identifier + "\"");
+	}
+}
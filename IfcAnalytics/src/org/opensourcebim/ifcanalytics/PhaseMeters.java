@@ -0,0 +1,67 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totals of the diagnostics phases over all runs of a service, one meter per phase name, named like
+ * "ifcanalytics.phase.products"
+ */
+public class PhaseMeters {
+
+	public static class Meter {
+		private final LongAdder count = new LongAdder();
+		private final LongAdder wallTime = new LongAdder();
+		private final LongAdder cpuTime = new LongAdder();
+		private final LongAdder allocatedBytes = new LongAdder();
+		private final LongAdder objects = new LongAdder();
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getWallTime() {
+			return wallTime.sum();
+		}
+
+		public long getCpuTime() {
+			return cpuTime.sum();
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes.sum();
+		}
+
+		public long getObjects() {
+			return objects.sum();
+		}
+	}
+
+	private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<>();
+
+	public void record(Diagnostics diagnostics) {
+		for (Diagnostics.Phase phase : diagnostics.getPhases()) {
+			String name = "ifcanalytics.phase." + phase.getName();
+			Meter meter = meters.get(name);
+			if (meter == null) {
+				meter = new Meter();
+				Meter existing = meters.putIfAbsent(name, meter);
+				if (existing != null) {
+					meter = existing;
+				}
+			}
+			meter.count.increment();
+			meter.wallTime.add(phase.getWallTime());
+			meter.cpuTime.add(phase.getCpuTime());
+			meter.allocatedBytes.add(phase.getAllocatedBytes());
+			meter.objects.add(phase.getObjects());
+		}
+	}
+
+	public Map<String, Meter> getMeters() {
+		return Collections.unmodifiableMap(meters);
+	}
+}
@@ -0,0 +1,32 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.models.geometry.GeometryInfo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Receives every IfcProduct of a model exactly once during the single pass of the {@link AnalyticsEngine}.
+ * 
+ * When the engine runs in parallel, every partition of the products is visited by its own accumulator
+ * created with {@link #createPartition()}, the partitions are merged back in model order afterwards.
+ */
+public interface ProductAccumulator<T extends ProductAccumulator<T>> {
+	/**
+	 * @return Whether visit reads the geometry of the product, the engine only loads it when one of the accumulators does
+	 */
+	boolean needsGeometry(IdEObject product);
+
+	/**
+	 * @param geometry The geometry of the product, may be null when this accumulator did not ask for it
+	 */
+	void visit(IdEObject product, GeometryInfo geometry);
+
+	T createPartition();
+
+	void merge(T partition);
+
+	void write(JsonGenerator generator) throws IOException;
+}
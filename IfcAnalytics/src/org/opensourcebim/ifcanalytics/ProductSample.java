@@ -0,0 +1,57 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * The products the aggregations look at in sampling mode. Stratified by type: every type gets the sample rate, but at
+ * least MIN_SAMPLE_SIZE objects. Spaces are not sampled, so the space totals stay exact.
+ *
+ * Whether a product is in the sample is decided on a hash of its oid, so the sample does not depend on the
+ * partitioning and is the same for every run. The rates are worked out up front, after that it is read only and can
+ * be shared by all partitions.
+ */
+public class ProductSample {
+
+	static final int MIN_SAMPLE_SIZE = 100;
+
+	private final double sampleRate;
+	private final Map<EClass, Double> sampleRates = new HashMap<>();
+
+	public ProductSample(IfcModelInterface model, double sampleRate) {
+		this.sampleRate = sampleRate;
+		for (EClass ifcProductClass : model.getPackageMetaData().getAllSubClasses(Ifc2x3tc1Package.eINSTANCE.getIfcProduct())) {
+			double rate = 1;
+			if (!ifcProductClass.getName().equals("IfcSpace")) {
+				int populationSize = model.getAll(ifcProductClass).size();
+				rate = Math.max(sampleRate, Math.min(1, (double) MIN_SAMPLE_SIZE / Math.max(1, populationSize)));
+			}
+			sampleRates.put(ifcProductClass, rate);
+		}
+	}
+
+	/**
+	 * @return The fraction asked for, types can have a higher rate
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	public boolean contains(IdEObject product) {
+		Double rate = sampleRates.get(product.eClass());
+		return rate == null || isSampled(product.getOid(), rate);
+	}
+
+	private static boolean isSampled(long oid, double sampleRate) {
+		long hash = oid * 0x9E3779B97F4A7C15L;
+		hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+		hash ^= hash >>> 31;
+		return (hash >>> 11) * 0x1.0p-53 < sampleRate;
+	}
+}
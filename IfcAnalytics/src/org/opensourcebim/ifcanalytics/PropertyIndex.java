@@ -0,0 +1,95 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.List;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.models.ifc2x3tc1.IfcObject;
+import org.bimserver.models.ifc2x3tc1.IfcPropertySet;
+import org.bimserver.models.ifc2x3tc1.IfcPropertySetDefinition;
+import org.bimserver.models.ifc2x3tc1.IfcRelDefines;
+import org.bimserver.models.ifc2x3tc1.IfcRelDefinesByProperties;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Number of property sets and properties per object, built with one scan over the IfcRelDefinesByProperties of a
+ * model. Counts the same way as IfcUtils.getNrOfPSets(object, true) and IfcUtils.getNrOfProperties(object), but a
+ * property set shared by many objects is only counted once.
+ *
+ * With a sample only the products in it are indexed, from their own IsDefinedBy, so the relations of the other
+ * products are never read.
+ */
+public class PropertyIndex {
+
+	private final LongIntHashMap nrOfPsets;
+	private final LongIntHashMap nrOfProperties;
+
+	private PropertyIndex(LongIntHashMap nrOfPsets, LongIntHashMap nrOfProperties) {
+		this.nrOfPsets = nrOfPsets;
+		this.nrOfProperties = nrOfProperties;
+	}
+
+	public static PropertyIndex build(IfcModelInterface model) {
+		return build(model, null);
+	}
+
+	/**
+	 * @param sample The products to index, null for all
+	 */
+	public static PropertyIndex build(IfcModelInterface model, ProductSample sample) {
+		if (sample != null) {
+			return buildSampled(model, sample);
+		}
+		List<IfcRelDefinesByProperties> rels = model.getAllWithSubTypes(IfcRelDefinesByProperties.class);
+		LongIntHashMap nrOfPsets = new LongIntHashMap(rels.size());
+		LongIntHashMap nrOfProperties = new LongIntHashMap(rels.size());
+		for (IfcRelDefinesByProperties ifcRelDefinesByProperties : rels) {
+			IfcPropertySetDefinition relatingPropertyDefinition = ifcRelDefinesByProperties.getRelatingPropertyDefinition();
+			if (!(relatingPropertyDefinition instanceof IfcPropertySet)) {
+				continue;
+			}
+			int nrOfPropertiesInSet = ((IfcPropertySet) relatingPropertyDefinition).getHasProperties().size();
+			for (IfcObject ifcObject : ifcRelDefinesByProperties.getRelatedObjects()) {
+				nrOfPsets.addTo(ifcObject.getOid(), 1);
+				if (nrOfPropertiesInSet > 0) {
+					nrOfProperties.addTo(ifcObject.getOid(), nrOfPropertiesInSet);
+				}
+			}
+		}
+		return new PropertyIndex(nrOfPsets, nrOfProperties);
+	}
+
+	private static PropertyIndex buildSampled(IfcModelInterface model, ProductSample sample) {
+		LongIntHashMap nrOfPsets = new LongIntHashMap();
+		LongIntHashMap nrOfProperties = new LongIntHashMap();
+		for (EClass ifcProductClass : model.getPackageMetaData().getAllSubClasses(Ifc2x3tc1Package.eINSTANCE.getIfcProduct())) {
+			for (IdEObject product : model.getAll(ifcProductClass)) {
+				if (!sample.contains(product)) {
+					continue;
+				}
+				for (IfcRelDefines ifcRelDefines : ((IfcObject) product).getIsDefinedBy()) {
+					if (ifcRelDefines instanceof IfcRelDefinesByProperties) {
+						IfcPropertySetDefinition relatingPropertyDefinition = ((IfcRelDefinesByProperties) ifcRelDefines).getRelatingPropertyDefinition();
+						if (relatingPropertyDefinition instanceof IfcPropertySet) {
+							nrOfPsets.addTo(product.getOid(), 1);
+							int nrOfPropertiesInSet = ((IfcPropertySet) relatingPropertyDefinition).getHasProperties().size();
+							if (nrOfPropertiesInSet > 0) {
+								nrOfProperties.addTo(product.getOid(), nrOfPropertiesInSet);
+							}
+						}
+					}
+				}
+			}
+		}
+		return new PropertyIndex(nrOfPsets, nrOfProperties);
+	}
+
+	public int getNrOfPsets(long oid) {
+		return nrOfPsets.get(oid);
+	}
+
+	public int getNrOfProperties(long oid) {
+		return nrOfProperties.get(oid);
+	}
+}
@@ -0,0 +1,112 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Mergeable quantile sketch for non negative values with log sized buckets. Every quantile is within 2.5% of the
+ * exact value, memory is bounded by the fixed value range of 1e-6 to 1e12, about 3 KB when every bucket is in use.
+ * Merging sketches gives the same counts in any order, so results do not depend on partitioning.
+ */
+public class QuantileSketch {
+
+	private static final double GAMMA = 1.05;
+	private static final double LOG_GAMMA = Math.log(GAMMA);
+	private static final double MIN_VALUE = 1e-6;
+	private static final double MAX_VALUE = 1e12;
+	private static final int NR_OF_BUCKETS = bucket(MAX_VALUE) + 1;
+
+	private int[] counts;
+	private int offset;
+	private long zeroCount;
+	private long count;
+	private double max;
+
+	public void add(double value) {
+		if (!(value >= 0)) {
+			return;
+		}
+		count++;
+		max = Math.max(max, value);
+		if (value < MIN_VALUE) {
+			zeroCount++;
+			return;
+		}
+		increment(bucket(Math.min(value, MAX_VALUE)), 1);
+	}
+
+	private static int bucket(double value) {
+		return (int) Math.ceil(Math.log(value / MIN_VALUE) / LOG_GAMMA);
+	}
+
+	private void increment(int bucket, int delta) {
+		if (counts == null) {
+			counts = new int[16];
+			offset = Math.max(0, Math.min(bucket - 8, NR_OF_BUCKETS - counts.length));
+		} else if (bucket < offset || bucket >= offset + counts.length) {
+			int from = Math.min(offset, bucket);
+			int to = Math.max(offset + counts.length, bucket + 1);
+			int length = Math.min(NR_OF_BUCKETS, Math.max(to - from, counts.length * 2));
+			int newOffset = Math.max(0, Math.min(from, to - length));
+			int[] newCounts = new int[length];
+			System.arraycopy(counts, 0, newCounts, offset - newOffset, counts.length);
+			counts = newCounts;
+			offset = newOffset;
+		}
+		counts[bucket - offset] += delta;
+	}
+
+	public void merge(QuantileSketch other) {
+		if (other.counts != null) {
+			for (int i = 0; i < other.counts.length; i++) {
+				if (other.counts[i] != 0) {
+					increment(other.offset + i, other.counts[i]);
+				}
+			}
+		}
+		zeroCount += other.zeroCount;
+		count += other.count;
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * @param quantile Between 0 and 1
+	 */
+	public double getQuantile(double quantile) {
+		if (count == 0) {
+			return Double.NaN;
+		}
+		long rank = (long) Math.ceil(quantile * count);
+		if (rank <= zeroCount) {
+			return 0;
+		}
+		long seen = zeroCount;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				double upper = MIN_VALUE * Math.pow(GAMMA, offset + i);
+				return Math.min(max, 2 * upper / (GAMMA + 1));
+			}
+		}
+		return max;
+	}
+
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		generator.writeNumberField("count", count);
+		generator.writeNumberField("p50", getQuantile(0.5));
+		generator.writeNumberField("p90", getQuantile(0.9));
+		generator.writeNumberField("p99", getQuantile(0.99));
+		generator.writeNumberField("max", max);
+		generator.writeEndObject();
+	}
+
+}
@@ -0,0 +1,276 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Analysis results by content key. Recently used results are kept in memory up to a maximum number of bytes, the least
+ * recently used ones are evicted to a directory when one is configured. The directory has its own byte budget, when
+ * it is full the least recently used files are deleted. Files left by an earlier cache on the same directory are
+ * taken over, oldest first.
+ */
+public class ResultCache {
+
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private volatile long maxMemoryBytes;
+	private volatile long maxDiskBytes;
+	private final Path spillDirectory;
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long memoryBytes;
+	// Sizes of the spilled files in least recently used order
+	private final LinkedHashMap<String, Long> spilled = new LinkedHashMap<>(16, 0.75f, true);
+	private long diskBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param spillDirectory Directory for evicted results, null to drop them
+	 * @param maxDiskBytes Bytes of spilled results kept in the directory
+	 */
+	public ResultCache(long maxMemoryBytes, Path spillDirectory, long maxDiskBytes) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.spillDirectory = spillDirectory;
+		this.maxDiskBytes = maxDiskBytes;
+		if (spillDirectory != null) {
+			indexSpillDirectory();
+		}
+	}
+
+	private void indexSpillDirectory() {
+		if (!Files.isDirectory(spillDirectory)) {
+			return;
+		}
+		List<Path> files = new ArrayList<>();
+		final Map<Path, Long> lastModified = new HashMap<>();
+		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(spillDirectory)) {
+			for (Path file : directoryStream) {
+				if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+					// Left by an interrupted spill
+					Files.deleteIfExists(file);
+				} else if (Files.isRegularFile(file)) {
+					files.add(file);
+					lastModified.put(file, Files.getLastModifiedTime(file).toMillis());
+				}
+			}
+			Collections.sort(files, new Comparator<Path>() {
+				@Override
+				public int compare(Path file1, Path file2) {
+					return Long.compare(lastModified.get(file1), lastModified.get(file2));
+				}
+			});
+			synchronized (spilled) {
+				for (Path file : files) {
+					long size = Files.size(file);
+					spilled.put(file.getFileName().toString(), size);
+					diskBytes += size;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		trimSpilled();
+	}
+
+	/**
+	 * Changes the budgets without dropping what is cached, results over the new budgets are evicted
+	 */
+	public void resize(long maxMemoryBytes, long maxDiskBytes) {
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.maxDiskBytes = maxDiskBytes;
+		evict();
+		trimSpilled();
+	}
+
+	public static String key(byte[] input, String settings) {
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			messageDigest.update(input);
+			messageDigest.update((byte) 0);
+			messageDigest.update(settings.getBytes(StandardCharsets.UTF_8));
+			StringBuilder key = new StringBuilder();
+			for (byte b : messageDigest.digest()) {
+				key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public byte[] get(String key) {
+		synchronized (entries) {
+			byte[] data = entries.get(key);
+			if (data != null) {
+				hits.incrementAndGet();
+				return data;
+			}
+		}
+		byte[] data = readSpilled(key);
+		if (data == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		put(key, data);
+		return data;
+	}
+
+	public void put(String key, byte[] data) {
+		if (data.length > maxMemoryBytes) {
+			spill(key, data);
+			return;
+		}
+		synchronized (entries) {
+			byte[] previous = entries.put(key, data);
+			if (previous != null) {
+				memoryBytes -= previous.length;
+			}
+			memoryBytes += data.length;
+		}
+		evict();
+	}
+
+	private void evict() {
+		Map<String, byte[]> evicted = new LinkedHashMap<>();
+		synchronized (entries) {
+			Iterator<Map.Entry<String, byte[]>> iterator = entries.entrySet().iterator();
+			while (memoryBytes > maxMemoryBytes && iterator.hasNext()) {
+				Map.Entry<String, byte[]> eldest = iterator.next();
+				iterator.remove();
+				memoryBytes -= eldest.getValue().length;
+				evicted.put(eldest.getKey(), eldest.getValue());
+			}
+		}
+		for (Map.Entry<String, byte[]> entry : evicted.entrySet()) {
+			evictions.incrementAndGet();
+			spill(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void spill(String key, byte[] data) {
+		if (spillDirectory == null || data.length > maxDiskBytes) {
+			return;
+		}
+		synchronized (spilled) {
+			if (spilled.containsKey(key)) {
+				return;
+			}
+		}
+		Path file = spillDirectory.resolve(key);
+		try {
+			Files.createDirectories(spillDirectory);
+			// Written next to the target and moved, a concurrent reader never sees a partial file
+			Path temp = Files.createTempFile(spillDirectory, key, TEMP_SUFFIX);
+			Files.write(temp, data);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		synchronized (spilled) {
+			Long previous = spilled.put(key, (long) data.length);
+			diskBytes += data.length - (previous == null ? 0 : previous);
+		}
+		trimSpilled();
+	}
+
+	/**
+	 * Deletes the least recently used files until the directory fits in its budget
+	 */
+	private void trimSpilled() {
+		List<String> deleted = new ArrayList<>();
+		synchronized (spilled) {
+			Iterator<Map.Entry<String, Long>> iterator = spilled.entrySet().iterator();
+			while (diskBytes > maxDiskBytes && iterator.hasNext()) {
+				Map.Entry<String, Long> eldest = iterator.next();
+				iterator.remove();
+				diskBytes -= eldest.getValue();
+				deleted.add(eldest.getKey());
+			}
+		}
+		for (String key : deleted) {
+			try {
+				Files.deleteIfExists(spillDirectory.resolve(key));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private byte[] readSpilled(String key) {
+		if (spillDirectory == null) {
+			return null;
+		}
+		synchronized (spilled) {
+			// Also marks the file as recently used
+			if (spilled.get(key) == null) {
+				return null;
+			}
+		}
+		try {
+			return Files.readAllBytes(spillDirectory.resolve(key));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public long getMaxMemoryBytes() {
+		return maxMemoryBytes;
+	}
+
+	public long getMaxDiskBytes() {
+		return maxDiskBytes;
+	}
+
+	public Path getSpillDirectory() {
+		return spillDirectory;
+	}
+
+	/**
+	 * @return Bytes of the results in the spill directory
+	 */
+	public long getDiskBytes() {
+		synchronized (spilled) {
+			return diskBytes;
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+	}
+}
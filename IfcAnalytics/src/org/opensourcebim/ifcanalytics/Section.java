@@ -0,0 +1,65 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The top level sections of the analytics output, in output order
+ */
+public enum Section {
+	HEADER("header", false),
+	PROJECT("project", true),
+	MATERIALS("materials", false),
+	CLASSIFICATIONS("classifications", false),
+	AGGREGATIONS("aggregations", true),
+	CHECKS("checks", true);
+
+	private final String fieldName;
+	private final boolean needsGeometry;
+
+	private Section(String fieldName, boolean needsGeometry) {
+		this.fieldName = fieldName;
+		this.needsGeometry = needsGeometry;
+	}
+
+	public String getFieldName() {
+		return fieldName;
+	}
+
+	public boolean needsGeometry() {
+		return needsGeometry;
+	}
+
+	public static Set<Section> withoutGeometry() {
+		Set<Section> sections = EnumSet.noneOf(Section.class);
+		for (Section section : values()) {
+			if (!section.needsGeometry) {
+				sections.add(section);
+			}
+		}
+		return sections;
+	}
+
+	/**
+	 * @param sections Comma separated field names, null or empty for all sections
+	 */
+	public static Set<Section> parse(String sections) {
+		if (sections == null || sections.trim().isEmpty()) {
+			return EnumSet.allOf(Section.class);
+		}
+		Set<Section> result = EnumSet.noneOf(Section.class);
+		for (String fieldName : sections.split(",")) {
+			result.add(forFieldName(fieldName.trim()));
+		}
+		return result;
+	}
+
+	private static Section forFieldName(String fieldName) {
+		for (Section section : values()) {
+			if (section.fieldName.equalsIgnoreCase(fieldName)) {
+				return section;
+			}
+		}
+		throw new IllegalArgumentException("Unknown section \"" + fieldName + "\"");
+	}
+}
@@ -0,0 +1,60 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One fork join pool for all runs of a service. Concurrent runs share its threads instead of each starting a pool of
+ * its own, and a run keeps at most its own parallelism of them busy.
+ */
+public class SharedPool {
+
+	private final ForkJoinPool pool;
+
+	public SharedPool(int size) {
+		this.pool = new ForkJoinPool(size);
+	}
+
+	/**
+	 * Runs the tasks on at most parallelism threads, every thread takes the next task until all are done
+	 *
+	 * @return The results in task order
+	 */
+	public <T> List<T> invokeAll(final List<? extends Callable<T>> tasks, int parallelism) throws InterruptedException, ExecutionException {
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicReferenceArray<T> results = new AtomicReferenceArray<>(tasks.size());
+		List<Callable<Void>> workers = new ArrayList<>();
+		for (int i = 0; i < Math.min(parallelism, tasks.size()); i++) {
+			workers.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					for (int task = next.getAndIncrement(); task < tasks.size(); task = next.getAndIncrement()) {
+						results.set(task, tasks.get(task).call());
+					}
+					return null;
+				}
+			});
+		}
+		for (Future<Void> future : pool.invokeAll(workers)) {
+			future.get();
+		}
+		List<T> list = new ArrayList<>(tasks.size());
+		for (int i = 0; i < tasks.size(); i++) {
+			list.add(results.get(i));
+		}
+		return list;
+	}
+
+	/**
+	 * Stops the threads once the running tasks are done
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+}
@@ -0,0 +1,160 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.ifc2x3tc1.IfcGroup;
+import org.bimserver.models.ifc2x3tc1.IfcObjectDefinition;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssigns;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssignsToGroup;
+import org.bimserver.models.ifc2x3tc1.IfcRelContainedInSpatialStructure;
+import org.bimserver.models.ifc2x3tc1.IfcRelDecomposes;
+import org.bimserver.models.ifc2x3tc1.IfcSpace;
+import org.bimserver.models.ifc2x3tc1.IfcSpatialStructureElement;
+import org.bimserver.models.ifc2x3tc1.IfcZone;
+
+/**
+ * Totals for every level of the spatial structure, computed in one post-order walk. Every object is visited once, the
+ * totals of a building are the sum of its storeys instead of a new walk down the tree.
+ *
+ * Objects are counted like IfcUtils.countDecomposed: everything below a node through IsDecomposedBy and, for spatial
+ * structure elements, ContainsElements, not counting the node itself. Zones are rolled up the same way, a storey,
+ * building or site has the zones of the spaces below it.
+ */
+public class SpatialRollup {
+
+	public static class Totals {
+		private int nrOfObjects;
+		private long nrOfTriangles;
+		private double spaceM2;
+		private double spaceM3;
+		private Set<IfcZone> zones = Collections.emptySet();
+
+		private void add(Totals child) {
+			nrOfObjects += child.nrOfObjects + 1;
+			nrOfTriangles += child.nrOfTriangles;
+			spaceM2 += child.spaceM2;
+			spaceM3 += child.spaceM3;
+			addZones(child.zones);
+		}
+
+		private void addZones(Collection<IfcZone> childZones) {
+			if (!childZones.isEmpty()) {
+				if (zones.isEmpty()) {
+					zones = new LinkedHashSet<>();
+				}
+				zones.addAll(childZones);
+			}
+		}
+
+		public int getNrOfObjects() {
+			return nrOfObjects;
+		}
+
+		public long getNrOfTriangles() {
+			return nrOfTriangles;
+		}
+
+		public double getSpaceM2() {
+			return spaceM2;
+		}
+
+		public double getSpaceM3() {
+			return spaceM3;
+		}
+
+		/**
+		 * @return The zones a space is assigned to, or for the levels above the zones of their spaces, in walk order
+		 */
+		public Set<IfcZone> getZones() {
+			return zones;
+		}
+	}
+
+	private final AnalysisContext context;
+	// Only the nodes with something below them are memoised, by oid to an index in totals plus one
+	private final LongIntHashMap indexes = new LongIntHashMap();
+	private final List<Totals> totals = new ArrayList<>();
+
+	public SpatialRollup(AnalysisContext context) {
+		this.context = context;
+	}
+
+	public Totals get(IfcObjectDefinition ifcObjectDefinition) {
+		int index = indexes.get(ifcObjectDefinition.getOid());
+		if (index != 0) {
+			return totals.get(index - 1);
+		}
+		return compute(ifcObjectDefinition);
+	}
+
+	private static boolean isLeaf(IfcObjectDefinition ifcObjectDefinition) {
+		return !(ifcObjectDefinition instanceof IfcSpatialStructureElement) && ifcObjectDefinition.getIsDecomposedBy().isEmpty();
+	}
+
+	private Totals compute(IfcObjectDefinition ifcObjectDefinition) {
+		Totals result = new Totals();
+		if (isLeaf(ifcObjectDefinition)) {
+			return result;
+		}
+		// Registered before the children, a cyclic decomposition ends here instead of recursing forever
+		totals.add(result);
+		indexes.addTo(ifcObjectDefinition.getOid(), totals.size());
+		for (IfcRelDecomposes ifcRelDecomposes : ifcObjectDefinition.getIsDecomposedBy()) {
+			for (IfcObjectDefinition child : ifcRelDecomposes.getRelatedObjects()) {
+				addChild(result, child);
+			}
+		}
+		if (ifcObjectDefinition instanceof IfcSpatialStructureElement) {
+			for (IfcRelContainedInSpatialStructure ifcRelContainedInSpatialStructure : ((IfcSpatialStructureElement) ifcObjectDefinition).getContainsElements()) {
+				for (IfcProduct child : ifcRelContainedInSpatialStructure.getRelatedElements()) {
+					addChild(result, child);
+				}
+			}
+		}
+		if (ifcObjectDefinition instanceof IfcSpace) {
+			result.addZones(getZones((IfcSpace) ifcObjectDefinition));
+		}
+		return result;
+	}
+
+	private void addChild(Totals result, IfcObjectDefinition child) {
+		if (isLeaf(child)) {
+			result.nrOfObjects++;
+		} else {
+			result.add(get(child));
+		}
+		if (child instanceof IfcProduct) {
+			GeometryInfo geometry = ((IfcProduct) child).getGeometry();
+			if (geometry != null) {
+				result.nrOfTriangles += geometry.getPrimitiveCount();
+				if (child instanceof IfcSpace) {
+					result.spaceM2 += IfcAnalyticsService.DEFAULT_AREA_UNIT.convert(context.getAreaCache().getArea(geometry), context.getAreaUnit());
+					result.spaceM3 += IfcAnalyticsService.DEFAULT_VOLUME_UNIT.convert(geometry.getVolume(), context.getVolumeUnit());
+				}
+			}
+		}
+	}
+
+	private static List<IfcZone> getZones(IfcSpace ifcSpace) {
+		List<IfcZone> zones = null;
+		for (IfcRelAssigns ifcRelAssigns : ifcSpace.getHasAssignments()) {
+			if (ifcRelAssigns instanceof IfcRelAssignsToGroup) {
+				IfcGroup relatingGroup = ((IfcRelAssignsToGroup) ifcRelAssigns).getRelatingGroup();
+				if (relatingGroup instanceof IfcZone) {
+					if (zones == null) {
+						zones = new ArrayList<>();
+					}
+					zones.add((IfcZone) relatingGroup);
+				}
+			}
+		}
+		return zones == null ? Collections.<IfcZone>emptyList() : zones;
+	}
+}
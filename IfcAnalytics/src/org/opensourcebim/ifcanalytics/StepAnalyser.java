@@ -0,0 +1,412 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Computes the header, materials and classifications sections in one forward pass over the raw STEP file, without
+ * building a model. The output is the same as that of IfcAnalyticsService for these sections.
+ *
+ * Only the entities these sections need are parsed (materials, classifications and their relations), of all other
+ * entities just the id and type are read. Memory use grows with the number of products and associated objects, which
+ * are kept as primitive oids, not with the size of the file. Entities are looked up by id through LongIntHashMap
+ * indexes into lists, stored + 1 so a missing id reads as 0.
+ *
+ * Only IFC2x3 files (IFC2X3, IFC2X3_TC1 and other IFC2X3 variants) are read, other schemas and complex entity
+ * instances throw an {@link UnsupportedIfcException}.
+ */
+public class StepAnalyser {
+
+	private static final String SUPPORTED_SCHEMA = "IFC2X3";
+	private static final Set<String> PRODUCT_TYPES = getProductTypes();
+
+	private static class Classification {
+		private String name;
+		private String edition;
+		private String source;
+		private long editionDate;
+	}
+
+	private static class ClassificationReference {
+		private String location;
+		private String itemReference;
+		private String name;
+		private long referencedSource;
+	}
+
+	private final Set<Section> sections;
+
+	private List<Object> fileDescription = Collections.emptyList();
+	private List<Object> fileName = Collections.emptyList();
+	private List<Object> fileSchema = Collections.emptyList();
+	private boolean schemaChecked;
+
+	private final LongList products = new LongList();
+
+	private final LongIntHashMap materialIndexes = new LongIntHashMap();
+	private final List<String> materialNames = new ArrayList<>();
+	private final LongIntHashMap layerIndexes = new LongIntHashMap();
+	private final LongList layerMaterials = new LongList();
+	private final LongIntHashMap layerSetIndexes = new LongIntHashMap();
+	private final List<long[]> layerSetLayers = new ArrayList<>();
+	private final LongIntHashMap usageIndexes = new LongIntHashMap();
+	private final LongList usageLayerSets = new LongList();
+	private final LongList relatingMaterials = new LongList();
+	private final LongList nrOfRelatedToMaterial = new LongList();
+	private final OidSet objectsWithMaterial = new OidSet();
+
+	private final List<Classification> classifications = new ArrayList<>();
+	private final LongIntHashMap classificationIndexes = new LongIntHashMap();
+	private final LongIntHashMap calendarDateIndexes = new LongIntHashMap();
+	private final List<int[]> calendarDates = new ArrayList<>();
+	private final List<ClassificationReference> classificationReferences = new ArrayList<>();
+	private final LongIntHashMap classificationReferenceIndexes = new LongIntHashMap();
+	private final LongList relatingClassifications = new LongList();
+	private final LongList relatedToClassification = new LongList();
+
+	public StepAnalyser(Set<Section> sections) {
+		this.sections = sections;
+	}
+
+	public void analyse(InputStream inputStream) throws IOException {
+		boolean materials = sections.contains(Section.MATERIALS);
+		boolean classifications = sections.contains(Section.CLASSIFICATIONS);
+		try (StepReader reader = new StepReader(inputStream)) {
+			while (reader.next()) {
+				long id = reader.getId();
+				String type = reader.getType();
+				if (id == 0) {
+					readHeader(reader, type);
+					continue;
+				}
+				if (!schemaChecked) {
+					checkSchema();
+				}
+				if (PRODUCT_TYPES.contains(type)) {
+					if (materials || classifications) {
+						products.add(id);
+					}
+				} else if (materials) {
+					readMaterial(reader, id, type);
+				}
+				if (classifications) {
+					readClassification(reader, id, type);
+				}
+			}
+		}
+		if (!schemaChecked) {
+			checkSchema();
+		}
+	}
+
+	/**
+	 * PRODUCT_TYPES and the attribute positions are those of IFC2x3, other schemas would be counted wrong
+	 */
+	private void checkSchema() throws UnsupportedIfcException {
+		String schema = getString(getList(fileSchema, 0), 0);
+		if (schema == null || !schema.toUpperCase(Locale.ROOT).startsWith(SUPPORTED_SCHEMA)) {
+			throw new UnsupportedIfcException("Schema " + schema + " is not supported, only " + SUPPORTED_SCHEMA);
+		}
+		schemaChecked = true;
+	}
+
+	private void readHeader(StepReader reader, String type) throws IOException {
+		switch (type) {
+		case "FILE_DESCRIPTION":
+			fileDescription = reader.readArguments();
+			break;
+		case "FILE_NAME":
+			fileName = reader.readArguments();
+			break;
+		case "FILE_SCHEMA":
+			fileSchema = reader.readArguments();
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void readMaterial(StepReader reader, long id, String type) throws IOException {
+		switch (type) {
+		case "IFCMATERIAL":
+			materialNames.add(getString(reader.readArguments(), 0));
+			materialIndexes.addTo(id, materialNames.size());
+			break;
+		case "IFCMATERIALLAYER":
+			layerMaterials.add(getReference(reader.readArguments(), 0));
+			layerIndexes.addTo(id, layerMaterials.size());
+			break;
+		case "IFCMATERIALLAYERSET": {
+			List<Object> layers = getList(reader.readArguments(), 0);
+			long[] layerIds = new long[layers.size()];
+			for (int i = 0; i < layerIds.length; i++) {
+				layerIds[i] = layers.get(i) instanceof Long ? (Long) layers.get(i) : 0;
+			}
+			layerSetLayers.add(layerIds);
+			layerSetIndexes.addTo(id, layerSetLayers.size());
+			break;
+		}
+		case "IFCMATERIALLAYERSETUSAGE":
+			usageLayerSets.add(getReference(reader.readArguments(), 0));
+			usageIndexes.addTo(id, usageLayerSets.size());
+			break;
+		case "IFCRELASSOCIATESMATERIAL": {
+			List<Object> arguments = reader.readArguments();
+			List<Object> relatedObjects = getList(arguments, 4);
+			for (Object relatedObject : relatedObjects) {
+				if (relatedObject instanceof Long) {
+					objectsWithMaterial.add((Long) relatedObject);
+				}
+			}
+			relatingMaterials.add(getReference(arguments, 5));
+			nrOfRelatedToMaterial.add(relatedObjects.size());
+			break;
+		}
+		default:
+			break;
+		}
+	}
+
+	private void readClassification(StepReader reader, long id, String type) throws IOException {
+		switch (type) {
+		case "IFCCLASSIFICATION": {
+			List<Object> arguments = reader.readArguments();
+			Classification classification = new Classification();
+			classification.source = getString(arguments, 0);
+			classification.edition = getString(arguments, 1);
+			classification.editionDate = getReference(arguments, 2);
+			classification.name = getString(arguments, 3);
+			classifications.add(classification);
+			classificationIndexes.addTo(id, classifications.size());
+			break;
+		}
+		case "IFCCALENDARDATE": {
+			List<Object> arguments = reader.readArguments();
+			calendarDates.add(new int[] { getInt(arguments, 2), getInt(arguments, 1), getInt(arguments, 0) });
+			calendarDateIndexes.addTo(id, calendarDates.size());
+			break;
+		}
+		case "IFCCLASSIFICATIONREFERENCE": {
+			List<Object> arguments = reader.readArguments();
+			ClassificationReference classificationReference = new ClassificationReference();
+			classificationReference.location = getString(arguments, 0);
+			classificationReference.itemReference = getString(arguments, 1);
+			classificationReference.name = getString(arguments, 2);
+			classificationReference.referencedSource = getReference(arguments, 3);
+			classificationReferences.add(classificationReference);
+			classificationReferenceIndexes.addTo(id, classificationReferences.size());
+			break;
+		}
+		case "IFCRELASSOCIATESCLASSIFICATION": {
+			List<Object> arguments = reader.readArguments();
+			long relatingClassification = getReference(arguments, 5);
+			for (Object relatedObject : getList(arguments, 4)) {
+				relatingClassifications.add(relatingClassification);
+				relatedToClassification.add(relatedObject instanceof Long ? (Long) relatedObject : 0);
+			}
+			break;
+		}
+		default:
+			break;
+		}
+	}
+
+	public int getNrOfProducts() {
+		return products.size();
+	}
+
+	public void write(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		if (sections.contains(Section.HEADER)) {
+			generator.writeFieldName(Section.HEADER.getFieldName());
+			writeHeader(generator);
+		}
+		if (sections.contains(Section.MATERIALS)) {
+			generator.writeFieldName(Section.MATERIALS.getFieldName());
+			writeMaterials(generator);
+		}
+		if (sections.contains(Section.CLASSIFICATIONS)) {
+			generator.writeFieldName(Section.CLASSIFICATIONS.getFieldName());
+			writeClassifications(generator);
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeHeader(JsonGenerator generator) throws IOException {
+		generator.writeStartObject();
+		writeStrings(generator, "author", getList(fileName, 2));
+		generator.writeStringField("authorization", getString(fileName, 6));
+		writeStrings(generator, "description", getList(fileDescription, 0));
+		generator.writeStringField("filename", getString(fileName, 0));
+		generator.writeStringField("schemaVersion", getString(getList(fileSchema, 0), 0));
+		generator.writeStringField("implementationLevel", getString(fileDescription, 1));
+		writeStrings(generator, "organization", getList(fileName, 3));
+		generator.writeStringField("originatingSystem", getString(fileName, 5));
+		generator.writeStringField("preProcessorVersion", getString(fileName, 4));
+		Long timeStamp = parseTimeStamp(getString(fileName, 1));
+		if (timeStamp == null) {
+			generator.writeNullField("timeStamp");
+		} else {
+			generator.writeNumberField("timeStamp", timeStamp);
+		}
+		generator.writeEndObject();
+	}
+
+	private static void writeStrings(JsonGenerator generator, String fieldName, List<Object> values) throws IOException {
+		generator.writeArrayFieldStart(fieldName);
+		for (Object value : values) {
+			generator.writeString(value instanceof String ? (String) value : null);
+		}
+		generator.writeEndArray();
+	}
+
+	private static Long parseTimeStamp(String timeStamp) {
+		if (timeStamp == null) {
+			return null;
+		}
+		try {
+			return OffsetDateTime.parse(timeStamp).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			try {
+				return LocalDateTime.parse(timeStamp).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+			} catch (DateTimeParseException e2) {
+				return null;
+			}
+		}
+	}
+
+	private void writeMaterials(JsonGenerator generator) throws IOException {
+		int[] nrOfProducts = new int[materialNames.size()];
+		for (int i = 0; i < relatingMaterials.size(); i++) {
+			long relatingMaterial = relatingMaterials.get(i);
+			int nrOfObjects = (int) nrOfRelatedToMaterial.get(i);
+			int materialIndex = materialIndexes.get(relatingMaterial) - 1;
+			if (materialIndex != -1) {
+				nrOfProducts[materialIndex] += nrOfObjects;
+			} else if (usageIndexes.containsKey(relatingMaterial)) {
+				int layerSetIndex = layerSetIndexes.get(usageLayerSets.get(usageIndexes.get(relatingMaterial) - 1)) - 1;
+				if (layerSetIndex != -1) {
+					for (long layer : layerSetLayers.get(layerSetIndex)) {
+						int layerIndex = layerIndexes.get(layer) - 1;
+						int layerMaterialIndex = layerIndex == -1 ? -1 : materialIndexes.get(layerMaterials.get(layerIndex)) - 1;
+						if (layerMaterialIndex != -1) {
+							nrOfProducts[layerMaterialIndex] += nrOfObjects;
+						}
+					}
+				}
+			}
+		}
+
+		generator.writeStartArray();
+		for (int i = 0; i < materialNames.size(); i++) {
+			generator.writeStartObject();
+			String name = materialNames.get(i);
+			if (name != null) {
+				generator.writeStringField("name", name);
+			}
+			generator.writeNumberField("nrOfProducts", nrOfProducts[i]);
+			generator.writeEndObject();
+		}
+		generator.writeStartObject();
+		generator.writeStringField("name", "NO_MATERIAL");
+		generator.writeNumberField("nrOfProducts", countProductsWithout(objectsWithMaterial));
+		generator.writeEndObject();
+		generator.writeEndArray();
+	}
+
+	/**
+	 * Groups classifications and references the same way as ClassificationsAccumulator
+	 */
+	private void writeClassifications(JsonGenerator generator) throws IOException {
+		ClassificationTree classificationTree = new ClassificationTree();
+		int[] treeClassifications = new int[classifications.size()];
+		for (int i = 0; i < classifications.size(); i++) {
+			Classification classification = classifications.get(i);
+			int calendarDateIndex = calendarDateIndexes.get(classification.editionDate) - 1;
+			treeClassifications[i] = classificationTree.addClassification(classification.name, classification.edition, classification.source, calendarDateIndex == -1 ? null : calendarDates.get(calendarDateIndex));
+		}
+
+		int[] treeReferences = new int[classificationReferences.size()];
+		for (int i = 0; i < classificationReferences.size(); i++) {
+			ClassificationReference classificationReference = classificationReferences.get(i);
+			int classificationIndex = classificationIndexes.get(classificationReference.referencedSource) - 1;
+			treeReferences[i] = classificationTree.addReference(classificationIndex == -1 ? -1 : treeClassifications[classificationIndex], classificationReference.location, classificationReference.itemReference, classificationReference.name);
+		}
+
+		OidSet objectsWithClassification = new OidSet();
+		for (int i = 0; i < relatingClassifications.size(); i++) {
+			int referenceIndex = classificationReferenceIndexes.get(relatingClassifications.get(i)) - 1;
+			if (referenceIndex != -1) {
+				classificationTree.addObjects(treeReferences[referenceIndex], 1);
+				objectsWithClassification.add(relatedToClassification.get(i));
+			}
+		}
+		classificationTree.write(generator, countProductsWithout(objectsWithClassification));
+	}
+
+	private int countProductsWithout(OidSet objects) {
+		int count = 0;
+		for (int i = 0; i < products.size(); i++) {
+			if (!objects.contains(products.get(i))) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static String getString(List<Object> arguments, int index) {
+		if (index < arguments.size() && arguments.get(index) instanceof String) {
+			return (String) arguments.get(index);
+		}
+		return null;
+	}
+
+	private static long getReference(List<Object> arguments, int index) {
+		if (index < arguments.size() && arguments.get(index) instanceof Long) {
+			return (Long) arguments.get(index);
+		}
+		return 0;
+	}
+
+	private static int getInt(List<Object> arguments, int index) {
+		if (index < arguments.size() && arguments.get(index) instanceof Double) {
+			return ((Double) arguments.get(index)).intValue();
+		}
+		return 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Object> getList(List<Object> arguments, int index) {
+		if (index < arguments.size() && arguments.get(index) instanceof List) {
+			return (List<Object>) arguments.get(index);
+		}
+		return Collections.emptyList();
+	}
+
+	private static Set<String> getProductTypes() {
+		Set<String> productTypes = new HashSet<>();
+		EClass ifcProduct = Ifc2x3tc1Package.eINSTANCE.getIfcProduct();
+		for (EClassifier eClassifier : Ifc2x3tc1Package.eINSTANCE.getEClassifiers()) {
+			if (eClassifier instanceof EClass && ifcProduct.isSuperTypeOf((EClass) eClassifier)) {
+				productTypes.add(eClassifier.getName().toUpperCase(Locale.ROOT));
+			}
+		}
+		return productTypes;
+	}
+}
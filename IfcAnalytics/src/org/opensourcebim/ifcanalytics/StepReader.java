@@ -0,0 +1,380 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Forward only reader for ISO 10303-21 (STEP physical file) records, with a fixed size buffer so files of any size can
+ * be read. Records that are not needed are skipped without creating objects, type names are interned so the type of
+ * a record can be compared by identity.
+ *
+ * Argument values are returned as null ($ and *), Long (entity reference), Double (number), String (string, binary
+ * and enumeration without the dots) and List (aggregate). Typed parameters like IFCLABEL('x') return their value.
+ */
+public class StepReader implements Closeable {
+
+	private final InputStream inputStream;
+	private final byte[] buffer = new byte[64 * 1024];
+	private int position;
+	private int limit;
+
+	private final byte[] token = new byte[256];
+	private String[] typeNames = new String[2048];
+	private byte[][] typeBytes = new byte[2048][];
+	private int nrOfTypes;
+
+	private long id;
+	private String type;
+	private boolean consumed = true;
+
+	public StepReader(InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+
+	/**
+	 * Moves to the next record, skipping what is left of the current one
+	 *
+	 * @return false at the end of the input
+	 */
+	public boolean next() throws IOException {
+		if (!consumed) {
+			skipRecord();
+		}
+		int c = skipWhitespace();
+		if (c == -1) {
+			return false;
+		}
+		id = 0;
+		if (c == '#') {
+			position++;
+			id = readLong();
+			c = skipWhitespace();
+			if (c != '=') {
+				throw new IOException("Expected = after #" + id);
+			}
+			position++;
+			if (skipWhitespace() == '(') {
+				throw new UnsupportedIfcException("Complex entity instance #" + id + " is not supported");
+			}
+		}
+		type = readType();
+		consumed = false;
+		return true;
+	}
+
+	/**
+	 * @return The entity id of the current record, 0 for header records and section keywords
+	 */
+	public long getId() {
+		return id;
+	}
+
+	/**
+	 * @return The upper case type or keyword of the current record, interned
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * @return The arguments of the current record, an empty list for keywords like DATA
+	 */
+	public List<Object> readArguments() throws IOException {
+		consumed = true;
+		int c = skipWhitespace();
+		List<Object> arguments;
+		if (c == '(') {
+			arguments = readList();
+			c = skipWhitespace();
+		} else {
+			arguments = new ArrayList<>(0);
+		}
+		if (c != ';') {
+			throw new IOException("Expected ; after " + type + (id == 0 ? "" : " #" + id));
+		}
+		position++;
+		return arguments;
+	}
+
+	private void skipRecord() throws IOException {
+		consumed = true;
+		int c;
+		while ((c = read()) != -1) {
+			if (c == ';') {
+				return;
+			} else if (c == '\'') {
+				skipString();
+			} else if (c == '/' && peek() == '*') {
+				skipComment();
+			}
+		}
+	}
+
+	private List<Object> readList() throws IOException {
+		position++;
+		List<Object> values = new ArrayList<>();
+		int c = skipWhitespace();
+		if (c == ')') {
+			position++;
+			return values;
+		}
+		while (true) {
+			values.add(readValue());
+			c = skipWhitespace();
+			position++;
+			if (c == ')') {
+				return values;
+			} else if (c != ',') {
+				throw new IOException("Expected , or ) in " + type + (id == 0 ? "" : " #" + id));
+			}
+		}
+	}
+
+	private Object readValue() throws IOException {
+		int c = skipWhitespace();
+		switch (c) {
+		case '$':
+		case '*':
+			position++;
+			return null;
+		case '#':
+			position++;
+			return readLong();
+		case '\'':
+			position++;
+			return readString();
+		case '"':
+			position++;
+			return readUntil('"');
+		case '.':
+			position++;
+			return readUntil('.');
+		case '(':
+			return readList();
+		case -1:
+			throw new IOException("Unexpected end of input in " + type + (id == 0 ? "" : " #" + id));
+		default:
+			if (c == '-' || c == '+' || (c >= '0' && c <= '9')) {
+				return readNumber();
+			}
+			// Typed parameter, the type name is not needed
+			readType();
+			skipWhitespace();
+			List<Object> typed = readList();
+			return typed.isEmpty() ? null : typed.get(0);
+		}
+	}
+
+	private long readLong() throws IOException {
+		long value = 0;
+		int c;
+		while ((c = peek()) >= '0' && c <= '9') {
+			value = value * 10 + (c - '0');
+			position++;
+		}
+		return value;
+	}
+
+	private Double readNumber() throws IOException {
+		int length = 0;
+		int c;
+		while ((c = peek()) != -1 && (c == '-' || c == '+' || c == '.' || c == 'E' || c == 'e' || (c >= '0' && c <= '9'))) {
+			if (length < token.length) {
+				token[length++] = (byte) c;
+			}
+			position++;
+		}
+		return Double.parseDouble(new String(token, 0, length, StandardCharsets.US_ASCII));
+	}
+
+	private String readUntil(char end) throws IOException {
+		StringBuilder value = new StringBuilder();
+		int c;
+		while ((c = read()) != end) {
+			if (c == -1) {
+				throw new IOException("Unexpected end of input in " + type + (id == 0 ? "" : " #" + id));
+			}
+			value.append((char) c);
+		}
+		return value.toString();
+	}
+
+	private String readString() throws IOException {
+		byte[] bytes = new byte[32];
+		int length = 0;
+		while (true) {
+			int c = read();
+			if (c == -1) {
+				throw new IOException("Unexpected end of input in " + type + (id == 0 ? "" : " #" + id));
+			}
+			if (c == '\'') {
+				if (peek() != '\'') {
+					break;
+				}
+				position++;
+			}
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, length * 2);
+			}
+			bytes[length++] = (byte) c;
+		}
+		return StepStrings.decode(new String(bytes, 0, length, StandardCharsets.UTF_8));
+	}
+
+	private void skipString() throws IOException {
+		int c;
+		while ((c = read()) != -1) {
+			if (c == '\'') {
+				if (peek() != '\'') {
+					return;
+				}
+				position++;
+			}
+		}
+	}
+
+	private void skipComment() throws IOException {
+		position++;
+		int previous = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (previous == '*' && c == '/') {
+				return;
+			}
+			previous = c;
+		}
+	}
+
+	private String readType() throws IOException {
+		int length = 0;
+		int hash = 0;
+		int c;
+		while ((c = peek()) != -1 && ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '-')) {
+			if (c >= 'a' && c <= 'z') {
+				c -= 'a' - 'A';
+			}
+			if (length == token.length) {
+				throw new IOException("Type name too long after " + (id == 0 ? "header" : "#" + id));
+			}
+			token[length++] = (byte) c;
+			hash = hash * 31 + c;
+			position++;
+		}
+		if (length == 0) {
+			throw new IOException("Expected a type name" + (id == 0 ? "" : " after #" + id));
+		}
+		int mask = typeNames.length - 1;
+		int slot = hash & mask;
+		while (typeBytes[slot] != null) {
+			if (equals(typeBytes[slot], token, length)) {
+				return typeNames[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		String name = new String(token, 0, length, StandardCharsets.US_ASCII).intern();
+		typeBytes[slot] = Arrays.copyOf(token, length);
+		typeNames[slot] = name;
+		if (++nrOfTypes * 2 > typeNames.length) {
+			growTypes();
+		}
+		return name;
+	}
+
+	private static boolean equals(byte[] bytes, byte[] token, int length) {
+		if (bytes.length != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (bytes[i] != token[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void growTypes() {
+		String[] oldNames = typeNames;
+		byte[][] oldBytes = typeBytes;
+		typeNames = new String[oldNames.length * 2];
+		typeBytes = new byte[oldBytes.length * 2][];
+		int mask = typeNames.length - 1;
+		for (int i = 0; i < oldBytes.length; i++) {
+			if (oldBytes[i] != null) {
+				int hash = 0;
+				for (byte b : oldBytes[i]) {
+					hash = hash * 31 + b;
+				}
+				int slot = hash & mask;
+				while (typeBytes[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				typeBytes[slot] = oldBytes[i];
+				typeNames[slot] = oldNames[i];
+			}
+		}
+	}
+
+	private int skipWhitespace() throws IOException {
+		while (true) {
+			int c = peek();
+			if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+				position++;
+			} else if (c == '/' && peekAfter() == '*') {
+				position++;
+				skipComment();
+			} else {
+				return c;
+			}
+		}
+	}
+
+	private int read() throws IOException {
+		int c = peek();
+		if (c != -1) {
+			position++;
+		}
+		return c;
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill(0)) {
+			return -1;
+		}
+		return buffer[position] & 0xff;
+	}
+
+	private int peekAfter() throws IOException {
+		if (position + 1 >= limit && !fill(1)) {
+			return -1;
+		}
+		return buffer[position + 1] & 0xff;
+	}
+
+	/**
+	 * Keeps the remaining bytes and reads until there are more than keep bytes available
+	 */
+	private boolean fill(int keep) throws IOException {
+		int remaining = limit - position;
+		System.arraycopy(buffer, position, buffer, 0, remaining);
+		position = 0;
+		limit = remaining;
+		while (limit <= keep) {
+			int read = inputStream.read(buffer, limit, buffer.length - limit);
+			if (read == -1) {
+				return false;
+			}
+			limit += read;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+	}
+}
@@ -0,0 +1,53 @@
+package org.opensourcebim.ifcanalytics;
+
+/**
+ * Decodes the control directives of ISO 10303-21 strings: \\, \S\, \X\, \X2\...\X0\, \X4\...\X0\ and \P?\
+ */
+public class StepStrings {
+
+	private StepStrings() {
+	}
+
+	public static String decode(String value) {
+		if (value.indexOf('\\') == -1) {
+			return value;
+		}
+		StringBuilder result = new StringBuilder(value.length());
+		int i = 0;
+		while (i < value.length()) {
+			char c = value.charAt(i);
+			if (c != '\\') {
+				result.append(c);
+				i++;
+			} else if (value.startsWith("\\\\", i)) {
+				result.append('\\');
+				i += 2;
+			} else if (value.startsWith("\\S\\", i) && i + 3 < value.length()) {
+				result.append((char) (value.charAt(i + 3) + 128));
+				i += 4;
+			} else if (value.startsWith("\\X\\", i) && i + 5 <= value.length()) {
+				result.append((char) Integer.parseInt(value.substring(i + 3, i + 5), 16));
+				i += 5;
+			} else if (value.startsWith("\\X2\\", i) || value.startsWith("\\X4\\", i)) {
+				int digits = value.charAt(i + 2) == '2' ? 4 : 8;
+				int end = value.indexOf("\\X0\\", i + 4);
+				if (end == -1) {
+					result.append(c);
+					i++;
+					continue;
+				}
+				for (int j = i + 4; j + digits <= end; j += digits) {
+					result.appendCodePoint(Integer.parseInt(value.substring(j, j + digits), 16));
+				}
+				i = end + 4;
+			} else if (value.startsWith("\\P", i) && i + 3 < value.length() && value.charAt(i + 3) == '\\') {
+				// Code page switch, only the default page is supported
+				i += 4;
+			} else {
+				result.append(c);
+				i++;
+			}
+		}
+		return result.toString();
+	}
+}
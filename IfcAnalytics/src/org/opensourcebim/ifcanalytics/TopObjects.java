@@ -0,0 +1,183 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap of the k best ranked objects, stored as primitive columns.
+ * 
+ * Only the oid of an object is kept, so holding the top lists does not keep the model objects reachable, names
+ * and guids are resolved for the final rows only. Higher keys rank first, equal keys are ordered by sequence.
+ * 
+ * The columns grow up to k as objects are offered, a heap of a partition with fewer objects than k stays small.
+ */
+public class TopObjects {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final int k;
+	private int size;
+
+	private double[] keys;
+	private long[] sequences;
+	private long[] oids;
+	private int[] primitiveCounts;
+	private double[] volumes;
+	private int[] nrOfProperties;
+
+	public TopObjects(int k) {
+		this.k = k;
+		int capacity = Math.min(k, INITIAL_CAPACITY);
+		this.keys = new double[capacity];
+		this.sequences = new long[capacity];
+		this.oids = new long[capacity];
+		this.primitiveCounts = new int[capacity];
+		this.volumes = new double[capacity];
+		this.nrOfProperties = new int[capacity];
+	}
+
+	public void offer(double key, long sequence, long oid, int primitiveCount, double volume, int nrOfProperties) {
+		if (size < k) {
+			if (size == keys.length) {
+				grow();
+			}
+			set(size, key, sequence, oid, primitiveCount, volume, nrOfProperties);
+			siftUp(size++);
+		} else if (k > 0 && better(key, sequence, keys[0], sequences[0])) {
+			set(0, key, sequence, oid, primitiveCount, volume, nrOfProperties);
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * @param sequenceOffset Added to the sequences of the other rows, used to place a partition behind the objects seen so far
+	 */
+	public void merge(TopObjects other, long sequenceOffset) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.keys[i], other.sequences[i] + sequenceOffset, other.oids[i], other.primitiveCounts[i], other.volumes[i], other.nrOfProperties[i]);
+		}
+	}
+
+	/**
+	 * @return The rows, best ranked first
+	 */
+	public int[] sortedRows() {
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = i;
+		}
+		// Insertion sort, k is small
+		for (int i = 1; i < size; i++) {
+			int row = rows[i];
+			int j = i - 1;
+			while (j >= 0 && better(keys[row], sequences[row], keys[rows[j]], sequences[rows[j]])) {
+				rows[j + 1] = rows[j];
+				j--;
+			}
+			rows[j + 1] = row;
+		}
+		return rows;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public double getKey(int row) {
+		return keys[row];
+	}
+
+	public long getOid(int row) {
+		return oids[row];
+	}
+
+	public int getPrimitiveCount(int row) {
+		return primitiveCounts[row];
+	}
+
+	public double getVolume(int row) {
+		return volumes[row];
+	}
+
+	public int getNrOfProperties(int row) {
+		return nrOfProperties[row];
+	}
+
+	private void grow() {
+		int capacity = (int) Math.min(k, 2L * keys.length);
+		keys = Arrays.copyOf(keys, capacity);
+		sequences = Arrays.copyOf(sequences, capacity);
+		oids = Arrays.copyOf(oids, capacity);
+		primitiveCounts = Arrays.copyOf(primitiveCounts, capacity);
+		volumes = Arrays.copyOf(volumes, capacity);
+		nrOfProperties = Arrays.copyOf(nrOfProperties, capacity);
+	}
+
+	private static boolean better(double key1, long sequence1, double key2, long sequence2) {
+		int result = Double.compare(key1, key2);
+		return result > 0 || (result == 0 && sequence1 < sequence2);
+	}
+
+	private boolean better(int row1, int row2) {
+		return better(keys[row1], sequences[row1], keys[row2], sequences[row2]);
+	}
+
+	private void set(int row, double key, long sequence, long oid, int primitiveCount, double volume, int nrOfProperties) {
+		this.keys[row] = key;
+		this.sequences[row] = sequence;
+		this.oids[row] = oid;
+		this.primitiveCounts[row] = primitiveCount;
+		this.volumes[row] = volume;
+		this.nrOfProperties[row] = nrOfProperties;
+	}
+
+	private void siftUp(int row) {
+		while (row > 0) {
+			int parent = (row - 1) / 2;
+			if (!better(parent, row)) {
+				break;
+			}
+			swap(row, parent);
+			row = parent;
+		}
+	}
+
+	private void siftDown(int row) {
+		while (true) {
+			int left = 2 * row + 1;
+			if (left >= size) {
+				break;
+			}
+			int worst = left;
+			int right = left + 1;
+			if (right < size && better(left, right)) {
+				worst = right;
+			}
+			if (!better(row, worst)) {
+				break;
+			}
+			swap(row, worst);
+			row = worst;
+		}
+	}
+
+	private void swap(int row1, int row2) {
+		double key = keys[row1];
+		keys[row1] = keys[row2];
+		keys[row2] = key;
+		long sequence = sequences[row1];
+		sequences[row1] = sequences[row2];
+		sequences[row2] = sequence;
+		long oid = oids[row1];
+		oids[row1] = oids[row2];
+		oids[row2] = oid;
+		int primitiveCount = primitiveCounts[row1];
+		primitiveCounts[row1] = primitiveCounts[row2];
+		primitiveCounts[row2] = primitiveCount;
+		double volume = volumes[row1];
+		volumes[row1] = volumes[row2];
+		volumes[row2] = volume;
+		int properties = nrOfProperties[row1];
+		nrOfProperties[row1] = nrOfProperties[row2];
+		nrOfProperties[row2] = properties;
+	}
+}
@@ -0,0 +1,15 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.io.IOException;
+
+/**
+ * The file is valid STEP, but uses a schema or construct the streaming analysis cannot read correctly
+ */
+public class UnsupportedIfcException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public UnsupportedIfcException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,141 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.bimserver.bimbots.BimBotsInput;
+import org.bimserver.models.store.BooleanType;
+import org.bimserver.models.store.LongType;
+import org.bimserver.models.store.ObjectType;
+import org.bimserver.models.store.Parameter;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.models.store.Type;
+import org.bimserver.plugins.PluginConfiguration;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * The clash detection runs next to the local analytics, with a local stand-in for the remote bot
+ */
+public class ClashDetectionTest {
+
+	private static final long WAIT_SECONDS = 30;
+
+	@Test
+	public void clashDetectionOverlapsProductsPass() throws Exception {
+		final CountDownLatch productsDone = new CountDownLatch(1);
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		IfcAnalyticsService service = createService(productsDone, new Callable<JsonNode>() {
+			@Override
+			public JsonNode call() throws Exception {
+				// Started before the end of the products pass and only finished after it
+				boolean startedBefore = productsDone.getCount() == 1;
+				overlapped.set(productsDone.await(WAIT_SECONDS, TimeUnit.SECONDS) && startedBefore);
+				ArrayNode clashes = IfcAnalyticsService.OBJECT_MAPPER.createArrayNode();
+				clashes.addObject().put("guid1", "a").put("guid2", "b");
+				return clashes;
+			}
+		});
+
+		try {
+			IfcAnalyticsService.Analysis analysis = service.analyse(TestModels.createInput(0), settings(WAIT_SECONDS));
+			assertTrue("Clash detection did not overlap the products pass", overlapped.get());
+			assertTrue(analysis.isComplete());
+			JsonNode clashes = IfcAnalyticsService.OBJECT_MAPPER.readTree(analysis.getData()).get("checks").get("clashes");
+			assertTrue(clashes.isArray());
+			assertEquals(1, clashes.size());
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void timeoutReturnsTimeoutStatus() throws Exception {
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		IfcAnalyticsService service = createService(new CountDownLatch(1), new Callable<JsonNode>() {
+			@Override
+			public JsonNode call() throws Exception {
+				try {
+					new CountDownLatch(1).await(WAIT_SECONDS, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					cancelled.countDown();
+				}
+				return IfcAnalyticsService.OBJECT_MAPPER.createArrayNode();
+			}
+		});
+
+		try {
+			IfcAnalyticsService.Analysis analysis = service.analyse(TestModels.createInput(0), settings(1));
+			assertFalse(analysis.isComplete());
+			JsonNode clashes = IfcAnalyticsService.OBJECT_MAPPER.readTree(analysis.getData()).get("checks").get("clashes");
+			assertEquals("timeout", clashes.get("status").asText());
+			assertTrue("The timed out call was not cancelled", cancelled.await(WAIT_SECONDS, TimeUnit.SECONDS));
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void zeroTimeoutWaitsUntilDone() throws Exception {
+		IfcAnalyticsService service = createService(new CountDownLatch(1), new Callable<JsonNode>() {
+			@Override
+			public JsonNode call() throws Exception {
+				Thread.sleep(1500);
+				return IfcAnalyticsService.OBJECT_MAPPER.createArrayNode();
+			}
+		});
+
+		try {
+			IfcAnalyticsService.Analysis analysis = service.analyse(TestModels.createInput(0), settings(0));
+			assertTrue(analysis.isComplete());
+			assertTrue(IfcAnalyticsService.OBJECT_MAPPER.readTree(analysis.getData()).get("checks").get("clashes").isArray());
+		} finally {
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * The output format is looked up right after the products pass, before the clash detection result is awaited
+	 */
+	private static IfcAnalyticsService createService(final CountDownLatch productsDone, final Callable<JsonNode> clashDetection) {
+		return new IfcAnalyticsService() {
+			@Override
+			protected Callable<JsonNode> createClashDetection(BimBotsInput input, String url, String token, String identifier) {
+				return clashDetection;
+			}
+
+			@Override
+			protected OutputFormat getOutputFormat(PluginConfiguration pluginConfiguration) {
+				productsDone.countDown();
+				return super.getOutputFormat(pluginConfiguration);
+			}
+		};
+	}
+
+	private static PluginConfiguration settings(long clashDetectionTimeout) {
+		ObjectType settings = StoreFactory.eINSTANCE.createObjectType();
+		BooleanType enabled = StoreFactory.eINSTANCE.createBooleanType();
+		enabled.setValue(true);
+		settings.getParameters().add(parameter("clashdetectionenabled", enabled));
+		LongType timeout = StoreFactory.eINSTANCE.createLongType();
+		timeout.setValue(clashDetectionTimeout);
+		settings.getParameters().add(parameter("clashdetectiontimeout", timeout));
+		return new PluginConfiguration(settings);
+	}
+
+	private static Parameter parameter(String identifier, Type value) {
+		Parameter parameter = StoreFactory.eINSTANCE.createParameter();
+		parameter.setIdentifier(identifier);
+		parameter.setName(identifier);
+		parameter.setValue(value);
+		return parameter;
+	}
+}
@@ -0,0 +1,61 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.bimserver.bimbots.BimBotsInput;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.plugins.PluginConfiguration;
+import org.junit.Test;
+
+/**
+ * One service instance analysing different models at the same time gives every run the output of a run on its own
+ */
+public class ConcurrentAnalysisTest {
+
+	private static final int NR_OF_MODELS = 6;
+	private static final int RUNS_PER_MODEL = 5;
+
+	@Test
+	public void concurrentRunsMatchSingleRuns() throws Exception {
+		final IfcAnalyticsService service = new IfcAnalyticsService();
+		final PluginConfiguration pluginConfiguration = new PluginConfiguration(StoreFactory.eINSTANCE.createObjectType());
+		final BimBotsInput[] inputs = new BimBotsInput[NR_OF_MODELS];
+		byte[][] expected = new byte[NR_OF_MODELS][];
+		for (int i = 0; i < NR_OF_MODELS; i++) {
+			inputs[i] = TestModels.createInput(i);
+			expected[i] = service.analyse(inputs[i], pluginConfiguration).getData();
+		}
+
+		ExecutorService executorService = Executors.newFixedThreadPool(NR_OF_MODELS * RUNS_PER_MODEL);
+		try {
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<byte[]>> futures = new ArrayList<>();
+			for (int run = 0; run < RUNS_PER_MODEL; run++) {
+				for (int i = 0; i < NR_OF_MODELS; i++) {
+					final BimBotsInput input = inputs[i];
+					futures.add(executorService.submit(new Callable<byte[]>() {
+						@Override
+						public byte[] call() throws Exception {
+							start.await();
+							return service.analyse(input, pluginConfiguration).getData();
+						}
+					}));
+				}
+			}
+			start.countDown();
+			for (int f = 0; f < futures.size(); f++) {
+				assertArrayEquals("Model " + f % NR_OF_MODELS, expected[f % NR_OF_MODELS], futures.get(f).get());
+			}
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+}
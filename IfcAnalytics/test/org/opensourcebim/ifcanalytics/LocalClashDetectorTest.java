@@ -0,0 +1,47 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * Only boxes that overlap by more than the tolerance and do not overlap by design clash
+ */
+public class LocalClashDetectorTest {
+
+	private static final float TOLERANCE_MM = 10;
+
+	@Test
+	public void overlappingPairClashes() {
+		IfcModelInterface model = TestModels.createClashes();
+		LocalClashDetector localClashDetector = new LocalClashDetector(model, new FeatureCache(), TOLERANCE_MM, 1, null);
+		Map<String, String> guids = new HashMap<>();
+		for (IfcProduct ifcProduct : model.getAllWithSubTypes(IfcProduct.class)) {
+			localClashDetector.visit(ifcProduct, ifcProduct.getGeometry());
+			guids.put(ifcProduct.getName(), ifcProduct.getGlobalId());
+		}
+
+		// The touching walls are within the tolerance, the host and its door fill the opening by design
+		ArrayNode clashes = localClashDetector.detectClashes();
+		assertEquals(1, clashes.size());
+		assertEquals(1, localClashDetector.getNrOfClashes());
+		JsonNode clash = clashes.get(0);
+		Set<String> clashing = new HashSet<>();
+		clashing.add(clash.get("guid1").asText());
+		clashing.add(clash.get("guid2").asText());
+		Set<String> expected = new HashSet<>();
+		expected.add(guids.get("Overlapping 1"));
+		expected.add(guids.get("Overlapping 2"));
+		assertEquals(expected, clashing);
+	}
+}
@@ -0,0 +1,92 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Test;
+
+/**
+ * Results move from memory to the spill directory and the directory stays within its own budget
+ */
+public class ResultCacheTest {
+
+	@Test
+	public void spillDirectoryKeepsMostRecentlyUsed() throws IOException {
+		Path directory = Files.createTempDirectory("resultcache");
+		try {
+			ResultCache resultCache = new ResultCache(10, directory, 25);
+			resultCache.put("a", new byte[10]);
+			resultCache.put("b", new byte[10]);
+			resultCache.put("c", new byte[10]);
+			// a and b are spilled, reading a makes b the least recently used file
+			assertArrayEquals(new byte[10], resultCache.get("a"));
+			resultCache.put("d", new byte[10]);
+			resultCache.put("e", new byte[10]);
+			assertTrue(resultCache.getDiskBytes() <= 25);
+			assertFalse(Files.exists(directory.resolve("b")));
+			assertNull(resultCache.get("b"));
+			assertEquals(resultCache.getDiskBytes(), directorySize(directory));
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void takesOverAndTrimsExistingFiles() throws IOException {
+		Path directory = Files.createTempDirectory("resultcache");
+		try {
+			ResultCache previous = new ResultCache(0, directory, 100);
+			previous.put("a", new byte[10]);
+			previous.put("b", new byte[10]);
+			Files.setLastModifiedTime(directory.resolve("a"), FileTime.fromMillis(1000));
+			Files.setLastModifiedTime(directory.resolve("b"), FileTime.fromMillis(2000));
+			Files.write(directory.resolve("c.tmp"), new byte[10]);
+
+			ResultCache resultCache = new ResultCache(0, directory, 15);
+			assertEquals(10, resultCache.getDiskBytes());
+			assertFalse(Files.exists(directory.resolve("a")));
+			assertFalse(Files.exists(directory.resolve("c.tmp")));
+			assertArrayEquals(new byte[10], resultCache.get("b"));
+		} finally {
+			delete(directory);
+		}
+	}
+
+	@Test
+	public void resizeKeepsEntries() {
+		ResultCache resultCache = new ResultCache(30, null, 0);
+		resultCache.put("a", new byte[10]);
+		resultCache.put("b", new byte[10]);
+		resultCache.resize(15, 0);
+		assertNull(resultCache.get("a"));
+		assertArrayEquals(new byte[10], resultCache.get("b"));
+	}
+
+	private static long directorySize(Path directory) throws IOException {
+		long size = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				size += Files.size(file);
+			}
+		}
+		return size;
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+}
@@ -0,0 +1,98 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The schema and construct checks of the streaming analysis and its materials and classifications on a small file
+ */
+public class StepAnalyserTest {
+
+	private static final String DATA = "DATA;\n"
+			+ "#1=IFCWALLSTANDARDCASE('0000000000000000000001',$,'Wall',$,$,$,$,$);\n"
+			+ "#2=IFCSLAB('0000000000000000000002',$,'Slab',$,$,$,$,$,.FLOOR.);\n"
+			+ "#3=IFCDOOR('0000000000000000000003',$,'Door',$,$,$,$,$,2.1,0.9);\n"
+			+ "#10=IFCMATERIAL('Concrete');\n"
+			+ "#11=IFCMATERIAL('Steel');\n"
+			+ "#12=IFCMATERIALLAYER(#11,0.2,$);\n"
+			+ "#13=IFCMATERIALLAYERSET((#12),'Layers');\n"
+			+ "#14=IFCMATERIALLAYERSETUSAGE(#13,.AXIS2.,.POSITIVE.,0.);\n"
+			+ "#15=IFCRELASSOCIATESMATERIAL('0000000000000000000015',$,$,$,(#1),#10);\n"
+			+ "#16=IFCRELASSOCIATESMATERIAL('0000000000000000000016',$,$,$,(#2),#14);\n"
+			+ "#20=IFCCALENDARDATE(1,2,2020);\n"
+			+ "#21=IFCCLASSIFICATION('Source','1',#20,'NL-SfB');\n"
+			+ "#22=IFCCLASSIFICATIONREFERENCE($,'21.1','Walls',#21);\n"
+			+ "#23=IFCRELASSOCIATESCLASSIFICATION('0000000000000000000023',$,$,$,(#1,#3),#22);\n"
+			+ "ENDSEC;\nEND-ISO-10303-21;\n";
+
+	private static String file(String schema) {
+		return "ISO-10303-21;\nHEADER;\nFILE_DESCRIPTION(('ViewDefinition [CoordinationView]'),'2;1');\n"
+				+ "FILE_NAME('test.ifc','2020-02-01T12:00:00',('Author'),('Organization'),'pre','system','auth');\n"
+				+ "FILE_SCHEMA(('" + schema + "'));\nENDSEC;\n" + DATA;
+	}
+
+	private static JsonNode analyse(String step) throws IOException {
+		StepAnalyser stepAnalyser = new StepAnalyser(EnumSet.of(Section.HEADER, Section.MATERIALS, Section.CLASSIFICATIONS));
+		stepAnalyser.analyse(new ByteArrayInputStream(step.getBytes(StandardCharsets.UTF_8)));
+		assertEquals(3, stepAnalyser.getNrOfProducts());
+		ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder();
+		try (JsonGenerator generator = OutputFormat.JSON.createGenerator(byteArrayBuilder)) {
+			stepAnalyser.write(generator);
+		}
+		return IfcAnalyticsService.OBJECT_MAPPER.readTree(byteArrayBuilder.toByteArray());
+	}
+
+	@Test
+	public void materialsAndClassifications() throws IOException {
+		JsonNode result = analyse(file("IFC2X3"));
+		assertEquals("IFC2X3", result.get("header").get("schemaVersion").asText());
+		JsonNode materials = result.get("materials");
+		assertEquals(3, materials.size());
+		assertEquals("Concrete", materials.get(0).get("name").asText());
+		assertEquals(1, materials.get(0).get("nrOfProducts").asInt());
+		// Through the layer set usage
+		assertEquals("Steel", materials.get(1).get("name").asText());
+		assertEquals(1, materials.get(1).get("nrOfProducts").asInt());
+		assertEquals("NO_MATERIAL", materials.get(2).get("name").asText());
+		assertEquals(1, materials.get(2).get("nrOfProducts").asInt());
+
+		JsonNode classifications = result.get("classifications");
+		assertEquals("NL-SfB", classifications.get(0).get("name").asText());
+		assertEquals(2020, classifications.get(0).get("editionDate").get("yearComponent").asInt());
+		JsonNode reference = classifications.get(0).get("references").get(0);
+		assertEquals("21.1", reference.get("itemReference").asText());
+		assertEquals(2, reference.get("numberOfObjects").asInt());
+		assertEquals(1, classifications.get(1).get("references").get(0).get("numberOfObjects").asInt());
+	}
+
+	@Test
+	public void schemaVariantsOfIfc2x3AreAccepted() throws IOException {
+		analyse(file("IFC2X3_TC1"));
+		analyse(file("ifc2x3"));
+	}
+
+	@Test(expected = UnsupportedIfcException.class)
+	public void otherSchemasAreRejected() throws IOException {
+		analyse(file("IFC4"));
+	}
+
+	@Test(expected = UnsupportedIfcException.class)
+	public void missingSchemaIsRejected() throws IOException {
+		analyse("ISO-10303-21;\nHEADER;\nENDSEC;\n" + DATA);
+	}
+
+	@Test(expected = UnsupportedIfcException.class)
+	public void complexEntityInstancesAreRejected() throws IOException {
+		analyse(file("IFC2X3").replace("#3=IFCDOOR(", "#3=(IFCDOOR(").replace("2.1,0.9);", "2.1,0.9));"));
+	}
+}
@@ -0,0 +1,130 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tokenizing of STEP records, also across the boundaries of the read buffer
+ */
+public class StepReaderTest {
+
+	private static StepReader reader(String step) {
+		return new StepReader(new ByteArrayInputStream(step.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void headerAndEntityRecords() throws IOException {
+		try (StepReader reader = reader("ISO-10303-21;\nHEADER;\nFILE_SCHEMA(('IFC2X3'));\nENDSEC;\nDATA;\n#12= IfcWall('guid',#5,$,*);\nENDSEC;\n")) {
+			assertTrue(reader.next());
+			assertEquals("ISO-10303-21", reader.getType());
+			assertEquals(0, reader.getId());
+			assertTrue(reader.next());
+			assertEquals("HEADER", reader.getType());
+			assertTrue(reader.next());
+			assertEquals("FILE_SCHEMA", reader.getType());
+			assertEquals(Collections.singletonList(Collections.singletonList("IFC2X3")), reader.readArguments());
+			assertTrue(reader.next());
+			assertTrue(reader.next());
+			assertEquals("DATA", reader.getType());
+			assertTrue(reader.next());
+			assertEquals(12, reader.getId());
+			assertSame("IFCWALL", reader.getType());
+			assertEquals(Arrays.asList("guid", 5L, null, null), reader.readArguments());
+			assertTrue(reader.next());
+			assertEquals("ENDSEC", reader.getType());
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	public void argumentValues() throws IOException {
+		try (StepReader reader = reader("#1=IFCX(.T.,-1.5E2,(#2,#3),IFCLABEL('x'),\"0A\",(),'it''s');")) {
+			assertTrue(reader.next());
+			List<Object> arguments = reader.readArguments();
+			assertEquals("T", arguments.get(0));
+			assertEquals(-150.0, arguments.get(1));
+			assertEquals(Arrays.asList(2L, 3L), arguments.get(2));
+			assertEquals("x", arguments.get(3));
+			assertEquals("0A", arguments.get(4));
+			assertEquals(Collections.emptyList(), arguments.get(5));
+			assertEquals("it's", arguments.get(6));
+		}
+	}
+
+	@Test
+	public void skippedRecordsMayContainSemicolonsInStringsAndComments() throws IOException {
+		try (StepReader reader = reader("#1=IFCA('a;b' /* ; */,$);\n/* #2=IFCB(); */\n#3=IFCC('c');")) {
+			assertTrue(reader.next());
+			assertEquals(1, reader.getId());
+			assertTrue(reader.next());
+			assertEquals(3, reader.getId());
+			assertEquals(Collections.singletonList("c"), reader.readArguments());
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	public void stringsAreDecoded() throws IOException {
+		try (StepReader reader = reader("#1=IFCMATERIAL('Beton \\X2\\00E9\\X0\\');")) {
+			assertTrue(reader.next());
+			assertEquals(Collections.singletonList("Beton \u00E9"), reader.readArguments());
+		}
+	}
+
+	@Test
+	public void recordsLargerThanTheBuffer() throws IOException {
+		StringBuilder step = new StringBuilder();
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			name.append((char) ('a' + i % 26));
+		}
+		for (int i = 1; i <= 3; i++) {
+			step.append("#").append(i).append("=IFCMATERIAL('").append(name).append("');\n");
+		}
+		try (StepReader reader = reader(step.toString())) {
+			for (int i = 1; i <= 3; i++) {
+				assertTrue(reader.next());
+				assertEquals(i, reader.getId());
+				if (i != 2) {
+					assertEquals(Collections.singletonList(name.toString()), reader.readArguments());
+				}
+			}
+			assertFalse(reader.next());
+		}
+	}
+
+	@Test
+	public void nullArgumentsAreKept() throws IOException {
+		try (StepReader reader = reader("#1=IFCA($);")) {
+			assertTrue(reader.next());
+			assertNull(reader.readArguments().get(0));
+		}
+	}
+
+	@Test(expected = UnsupportedIfcException.class)
+	public void complexEntityInstanceIsRejected() throws IOException {
+		try (StepReader reader = reader("#1=(IFCA()IFCB());")) {
+			reader.next();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void missingSemicolonIsAnError() throws IOException {
+		try (StepReader reader = reader("#1=IFCA('a')")) {
+			reader.next();
+			reader.readArguments();
+		}
+	}
+}
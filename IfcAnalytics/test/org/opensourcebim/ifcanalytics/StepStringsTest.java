@@ -0,0 +1,53 @@
+package org.opensourcebim.ifcanalytics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Decoding of the ISO 10303-21 string control directives
+ */
+public class StepStringsTest {
+
+	@Test
+	public void plainStringIsReturnedAsIs() {
+		String value = "Wall 1";
+		assertSame(value, StepStrings.decode(value));
+	}
+
+	@Test
+	public void escapedBackslash() {
+		assertEquals("a\\b", StepStrings.decode("a\\\\b"));
+	}
+
+	@Test
+	public void upperHalfOfLatin1() {
+		assertEquals("\u00E9", StepStrings.decode("\\S\\i"));
+	}
+
+	@Test
+	public void eightBitHex() {
+		assertEquals("\u00FCber", StepStrings.decode("\\X\\FCber"));
+	}
+
+	@Test
+	public void sixteenBitHex() {
+		assertEquals("Stra\u00DFe \u20AC", StepStrings.decode("Stra\\X2\\00DF\\X0\\e \\X2\\20AC\\X0\\"));
+	}
+
+	@Test
+	public void thirtyTwoBitHex() {
+		assertEquals(new String(Character.toChars(0x1F600)), StepStrings.decode("\\X4\\0001F600\\X0\\"));
+	}
+
+	@Test
+	public void codePageSwitchIsDropped() {
+		assertEquals("abc", StepStrings.decode("\\PA\\abc"));
+	}
+
+	@Test
+	public void unterminatedHexIsKept() {
+		assertEquals("\\X2\\00DF", StepStrings.decode("\\X2\\00DF"));
+	}
+}
@@ -0,0 +1,240 @@
+package org.opensourcebim.ifcanalytics;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.HashMap;
+
+import org.bimserver.bimbots.BimBotsInput;
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.IfcModelInterfaceException;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
+import org.bimserver.ifc.BasicIfcModel;
+import org.bimserver.models.geometry.Bounds;
+import org.bimserver.models.geometry.Buffer;
+import org.bimserver.models.geometry.GeometryData;
+import org.bimserver.models.geometry.GeometryFactory;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.geometry.Vector3f;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Factory;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.models.ifc2x3tc1.IfcBuilding;
+import org.bimserver.models.ifc2x3tc1.IfcBuildingStorey;
+import org.bimserver.models.ifc2x3tc1.IfcDoor;
+import org.bimserver.models.ifc2x3tc1.IfcMaterial;
+import org.bimserver.models.ifc2x3tc1.IfcObjectDefinition;
+import org.bimserver.models.ifc2x3tc1.IfcOpeningElement;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.bimserver.models.ifc2x3tc1.IfcProject;
+import org.bimserver.models.ifc2x3tc1.IfcRelAggregates;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssignsToGroup;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesMaterial;
+import org.bimserver.models.ifc2x3tc1.IfcRelContainedInSpatialStructure;
+import org.bimserver.models.ifc2x3tc1.IfcRelFillsElement;
+import org.bimserver.models.ifc2x3tc1.IfcRelVoidsElement;
+import org.bimserver.models.ifc2x3tc1.IfcRoot;
+import org.bimserver.models.ifc2x3tc1.IfcSIPrefix;
+import org.bimserver.models.ifc2x3tc1.IfcSIUnit;
+import org.bimserver.models.ifc2x3tc1.IfcSIUnitName;
+import org.bimserver.models.ifc2x3tc1.IfcSite;
+import org.bimserver.models.ifc2x3tc1.IfcSpace;
+import org.bimserver.models.ifc2x3tc1.IfcUnitAssignment;
+import org.bimserver.models.ifc2x3tc1.IfcUnitEnum;
+import org.bimserver.models.ifc2x3tc1.IfcWall;
+import org.bimserver.models.ifc2x3tc1.IfcZone;
+import org.bimserver.models.store.IfcHeader;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.plugins.SchemaName;
+
+/**
+ * Small in memory models that differ per variant in units, size, materials and whether they contain a cube near zero
+ */
+class TestModels {
+
+	private static final Ifc2x3tc1Factory FACTORY = Ifc2x3tc1Factory.eINSTANCE;
+
+	private final BasicIfcModel model;
+	private long nextOid = 1;
+
+	private TestModels() {
+		model = new BasicIfcModel(new PackageMetaData(Ifc2x3tc1Package.eINSTANCE, Schema.IFC2X3TC1, Paths.get(System.getProperty("java.io.tmpdir"))), new HashMap<Integer, Long>());
+	}
+
+	static BimBotsInput createInput(int variant) {
+		BimBotsInput input = new BimBotsInput(SchemaName.IFC_STEP_2X3TC1, new byte[0]);
+		input.setIfcModel(create(variant));
+		return input;
+	}
+
+	/**
+	 * Odd variants are modelled in millimeters, even variants in meters and with a cube near zero
+	 */
+	static IfcModelInterface create(int variant) {
+		return new TestModels().build(variant);
+	}
+
+	/**
+	 * Two overlapping walls, two walls touching within the clash tolerance of 10 mm and a door in the opening of a wall.
+	 * Bounds are in millimeters.
+	 */
+	static IfcModelInterface createClashes() {
+		return new TestModels().buildClashes();
+	}
+
+	private IfcModelInterface build(int variant) {
+		boolean millimeters = variant % 2 == 1;
+		float scale = millimeters ? 1000 : 1;
+
+		IfcHeader ifcHeader = StoreFactory.eINSTANCE.createIfcHeader();
+		ifcHeader.setFilename("variant" + variant + ".ifc");
+		ifcHeader.setIfcSchemaVersion("IFC2X3");
+		ifcHeader.setTimeStamp(new Date(variant * 1000L));
+		ifcHeader.getAuthor().add("Variant " + variant);
+		model.getModelMetaData().setIfcHeader(ifcHeader);
+
+		IfcUnitAssignment units = add(FACTORY.createIfcUnitAssignment());
+		IfcSIUnit lengthUnit = unit(IfcUnitEnum.LENGTHUNIT, IfcSIUnitName.METRE);
+		if (millimeters) {
+			lengthUnit.setPrefix(IfcSIPrefix.MILLI);
+		}
+		units.getUnits().add(lengthUnit);
+		units.getUnits().add(unit(IfcUnitEnum.AREAUNIT, IfcSIUnitName.SQUARE_METRE));
+		units.getUnits().add(unit(IfcUnitEnum.VOLUMEUNIT, IfcSIUnitName.CUBIC_METRE));
+		IfcProject project = named(FACTORY.createIfcProject(), "Project " + variant);
+		project.setUnitsInContext(units);
+		IfcSite site = named(FACTORY.createIfcSite(), "Site");
+		IfcBuilding building = named(FACTORY.createIfcBuilding(), "Building");
+		aggregate(project, site);
+		aggregate(site, building);
+
+		IfcMaterial[] materials = new IfcMaterial[2 + variant];
+		for (int i = 0; i < materials.length; i++) {
+			materials[i] = add(FACTORY.createIfcMaterial());
+			materials[i].setName("Material " + variant + "." + i);
+		}
+		IfcZone zone = named(FACTORY.createIfcZone(), "Zone " + variant);
+		IfcRelAssignsToGroup ifcRelAssignsToGroup = named(FACTORY.createIfcRelAssignsToGroup(), null);
+		ifcRelAssignsToGroup.setRelatingGroup(zone);
+
+		int nrOfStoreys = 1 + variant % 3;
+		for (int s = 0; s < nrOfStoreys; s++) {
+			IfcBuildingStorey storey = named(FACTORY.createIfcBuildingStorey(), "Storey " + s);
+			aggregate(building, storey);
+			IfcSpace space = named(FACTORY.createIfcSpace(), "Space " + s);
+			space.setGeometry(geometry(0, 0, s * 3000, 5000, 4000, 3000, scale, 20 + s));
+			aggregate(storey, space);
+			ifcRelAssignsToGroup.getRelatedObjects().add(space);
+
+			IfcRelContainedInSpatialStructure containment = named(FACTORY.createIfcRelContainedInSpatialStructure(), null);
+			containment.setRelatingStructure(storey);
+			// More than one partition of the engine, so the parallel path is taken
+			int nrOfProducts = 3000 + 1000 * variant;
+			IfcRelAssociatesMaterial ifcRelAssociatesMaterial = null;
+			for (int i = 0; i < nrOfProducts; i++) {
+				IfcProduct product = named(i % 5 == 0 ? FACTORY.createIfcSlab() : FACTORY.createIfcWallStandardCase(), "Object " + s + "." + i);
+				product.setGeometry(geometry(2000 + i * 10, 2000 + (i % 50) * 100, s * 3000, 200 + i % 7, 3000, 2500, scale, 12 + i % 100));
+				containment.getRelatedElements().add(product);
+				if (i % 100 == 0) {
+					ifcRelAssociatesMaterial = named(FACTORY.createIfcRelAssociatesMaterial(), null);
+					ifcRelAssociatesMaterial.setRelatingMaterial(materials[(i / 100) % materials.length]);
+				}
+				if (i % 3 != 0) {
+					ifcRelAssociatesMaterial.getRelatedObjects().add(product);
+				}
+			}
+			if (!millimeters && s == 0) {
+				IfcProduct cube = named(FACTORY.createIfcFurnishingElement(), "Cube");
+				cube.setGeometry(geometry(-500, -500, -500, 1000, 1000, 1000, scale, 12));
+				containment.getRelatedElements().add(cube);
+			}
+		}
+		return model;
+	}
+
+	private IfcModelInterface buildClashes() {
+		named(FACTORY.createIfcWall(), "Overlapping 1").setGeometry(geometry(0, 0, 0, 1000, 200, 3000, 1000, 12));
+		named(FACTORY.createIfcWall(), "Overlapping 2").setGeometry(geometry(500, 0, 0, 1000, 200, 3000, 1000, 12));
+		named(FACTORY.createIfcWall(), "Touching 1").setGeometry(geometry(5000, 0, 0, 1000, 200, 3000, 1000, 12));
+		named(FACTORY.createIfcWall(), "Touching 2").setGeometry(geometry(5995, 0, 0, 1000, 200, 3000, 1000, 12));
+
+		IfcWall host = named(FACTORY.createIfcWall(), "Host");
+		host.setGeometry(geometry(10000, 0, 0, 2000, 200, 3000, 1000, 12));
+		IfcOpeningElement opening = named(FACTORY.createIfcOpeningElement(), "Opening");
+		opening.setGeometry(geometry(10500, 0, 0, 1000, 200, 2100, 1000, 12));
+		IfcRelVoidsElement ifcRelVoidsElement = named(FACTORY.createIfcRelVoidsElement(), null);
+		ifcRelVoidsElement.setRelatingBuildingElement(host);
+		ifcRelVoidsElement.setRelatedOpeningElement(opening);
+		IfcDoor door = named(FACTORY.createIfcDoor(), "Door");
+		door.setGeometry(geometry(10500, 50, 0, 1000, 100, 2100, 1000, 12));
+		IfcRelFillsElement ifcRelFillsElement = named(FACTORY.createIfcRelFillsElement(), null);
+		ifcRelFillsElement.setRelatingOpeningElement(opening);
+		ifcRelFillsElement.setRelatedBuildingElement(door);
+		return model;
+	}
+
+	/**
+	 * A box with its bounds in millimeters and its vertices, area and volume in the model units
+	 */
+	private GeometryInfo geometry(float x, float y, float z, float sizeX, float sizeY, float sizeZ, float scale, int nrOfTriangles) {
+		Bounds bounds = GeometryFactory.eINSTANCE.createBounds();
+		bounds.setMin(vector(x, y, z));
+		bounds.setMax(vector(x + sizeX, y + sizeY, z + sizeZ));
+		ByteBuffer vertices = ByteBuffer.allocate(8 * 3 * 4);
+		for (int i = 0; i < 8; i++) {
+			vertices.putFloat((x + ((i & 1) == 0 ? 0 : sizeX)) * scale / 1000);
+			vertices.putFloat((y + ((i & 2) == 0 ? 0 : sizeY)) * scale / 1000);
+			vertices.putFloat((z + ((i & 4) == 0 ? 0 : sizeZ)) * scale / 1000);
+		}
+		Buffer buffer = GeometryFactory.eINSTANCE.createBuffer();
+		buffer.setData(vertices.array());
+		GeometryData data = GeometryFactory.eINSTANCE.createGeometryData();
+		data.setVertices(buffer);
+
+		GeometryInfo geometryInfo = add(GeometryFactory.eINSTANCE.createGeometryInfo());
+		geometryInfo.setBoundsMm(bounds);
+		geometryInfo.setPrimitiveCount(nrOfTriangles);
+		geometryInfo.setArea(sizeX * sizeY / 1000000);
+		geometryInfo.setVolume((double) sizeX * sizeY * sizeZ / 1000000000);
+		geometryInfo.setData(data);
+		return geometryInfo;
+	}
+
+	private static Vector3f vector(double x, double y, double z) {
+		Vector3f vector = GeometryFactory.eINSTANCE.createVector3f();
+		vector.setX(x);
+		vector.setY(y);
+		vector.setZ(z);
+		return vector;
+	}
+
+	private IfcSIUnit unit(IfcUnitEnum unitType, IfcSIUnitName name) {
+		IfcSIUnit unit = add(FACTORY.createIfcSIUnit());
+		unit.setUnitType(unitType);
+		unit.setName(name);
+		return unit;
+	}
+
+	private void aggregate(IfcObjectDefinition parent, IfcObjectDefinition child) {
+		IfcRelAggregates ifcRelAggregates = named(FACTORY.createIfcRelAggregates(), null);
+		ifcRelAggregates.setRelatingObject(parent);
+		ifcRelAggregates.getRelatedObjects().add(child);
+	}
+
+	private <T extends IfcRoot> T named(T object, String name) {
+		add(object);
+		object.setGlobalId(String.format("%022d", object.getOid()));
+		object.setName(name);
+		return object;
+	}
+
+	private <T extends IdEObject> T add(T object) {
+		try {
+			model.add(nextOid++, object);
+		} catch (IfcModelInterfaceException e) {
+			throw new RuntimeException(e);
+		}
+		return object;
+	}
+}
@@ -0,0 +1,99 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.emf.IfcModelInterface;
+import org.opensourcebim.ifcanalytics.AggregationsAccumulator;
+import org.opensourcebim.ifcanalytics.AnalysisContext;
+import org.opensourcebim.ifcanalytics.AnalyticsEngine;
+import org.opensourcebim.ifcanalytics.ChecksAccumulator;
+import org.opensourcebim.ifcanalytics.ClassificationsAccumulator;
+import org.opensourcebim.ifcanalytics.MaterialsAccumulator;
+import org.opensourcebim.ifcanalytics.OutputFormat;
+import org.opensourcebim.ifcanalytics.ProductAccumulator;
+import org.opensourcebim.ifcanalytics.PropertyIndex;
+import org.opensourcebim.ifcanalytics.Section;
+import org.opensourcebim.ifcanalytics.SharedPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+
+/**
+ * The model path of the service: the indexes, the single pass of the engine over an in memory model and writing the
+ * result, for all accumulators together and for each on its own
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx16g" })
+public class AnalyticsEngineBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	private int nrOfObjects;
+
+	@Param({ "1", "4" })
+	private int parallelism;
+
+	@Param({ "all", "materials", "classifications", "aggregations", "checks" })
+	private String accumulators;
+
+	private final SharedPool sharedPool = new SharedPool(Runtime.getRuntime().availableProcessors());
+	private IfcModelInterface model;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		model = new SyntheticModelGenerator().setNrOfObjects(nrOfObjects).generate();
+	}
+
+	@Benchmark
+	public byte[] analyse() throws IOException {
+		AnalysisContext context = new AnalysisContext(model, parallelism, 10, EnumSet.allOf(Section.class), false, 1);
+		AnalyticsEngine engine = new AnalyticsEngine(model, context.getFeatureCache(), context.getParallelism(), sharedPool);
+		List<ProductAccumulator<?>> registered = new ArrayList<>();
+		boolean all = accumulators.equals("all");
+		if (all || accumulators.equals("materials")) {
+			registered.add(engine.register(new MaterialsAccumulator(model, context.getFeatureCache())));
+		}
+		if (all || accumulators.equals("classifications")) {
+			registered.add(engine.register(new ClassificationsAccumulator(model)));
+		}
+		if (all || accumulators.equals("aggregations") || accumulators.equals("checks")) {
+			PropertyIndex propertyIndex = PropertyIndex.build(model);
+			if (all || accumulators.equals("aggregations")) {
+				registered.add(engine.register(new AggregationsAccumulator(context, propertyIndex)));
+			}
+			if (all || accumulators.equals("checks")) {
+				registered.add(engine.register(new ChecksAccumulator(context, ChecksAccumulator.loadChecks(), propertyIndex)));
+			}
+		}
+		engine.run();
+
+		ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder();
+		try (JsonGenerator generator = OutputFormat.JSON.createGenerator(byteArrayBuilder)) {
+			generator.writeStartArray();
+			for (ProductAccumulator<?> accumulator : registered) {
+				accumulator.write(generator);
+			}
+			generator.writeEndArray();
+		}
+		return byteArrayBuilder.toByteArray();
+	}
+}
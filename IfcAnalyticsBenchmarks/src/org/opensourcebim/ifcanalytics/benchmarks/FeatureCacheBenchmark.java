@@ -0,0 +1,65 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
+import org.opensourcebim.ifcanalytics.FeatureCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Feature lookup by name for every object, against the lookup once per EClass that the analytics use
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FeatureCacheBenchmark {
+
+	private final List<EClass> productClasses = new ArrayList<>();
+	private final FeatureCache featureCache = new FeatureCache();
+
+	@Setup
+	public void setup() {
+		EClass ifcProduct = Ifc2x3tc1Package.eINSTANCE.getIfcProduct();
+		for (EClassifier eClassifier : Ifc2x3tc1Package.eINSTANCE.getEClassifiers()) {
+			if (eClassifier instanceof EClass && ifcProduct.isSuperTypeOf((EClass) eClassifier)) {
+				productClasses.add((EClass) eClassifier);
+			}
+		}
+	}
+
+	@Benchmark
+	public void byName(Blackhole blackhole) {
+		for (EClass eClass : productClasses) {
+			blackhole.consume(eClass.getEStructuralFeature("GlobalId"));
+			blackhole.consume(eClass.getEStructuralFeature("Name"));
+			blackhole.consume(eClass.getEStructuralFeature("geometry"));
+		}
+	}
+
+	@Benchmark
+	public void cached(Blackhole blackhole) {
+		for (EClass eClass : productClasses) {
+			FeatureCache.ClassFeatures classFeatures = featureCache.get(eClass);
+			blackhole.consume(classFeatures.getGlobalId());
+			blackhole.consume(classFeatures.getName());
+			blackhole.consume(classFeatures.getGeometry());
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.opensourcebim.ifcanalytics.OutputFormat;
+import org.opensourcebim.ifcanalytics.Section;
+import org.opensourcebim.ifcanalytics.StepAnalyser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Encode and decode time per output format. The encoded size of every format is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1)
+public class OutputFormatBenchmark {
+
+	@Param({ "JSON", "SMILE" })
+	private OutputFormat outputFormat;
+
+	@Param({ "100", "10000" })
+	private int nrOfMaterials;
+
+	private StepAnalyser stepAnalyser;
+	private byte[] encoded;
+
+	@Setup(Level.Trial)
+	public void analyse() throws IOException {
+		// Many materials and classification references give a result with many small objects, like the larger sections
+		byte[] data = new SyntheticIfcGenerator().setNrOfObjects(100000).setMaterialFanOut(nrOfMaterials, 5).setClassificationFanOut(nrOfMaterials, 5).setGeometrySize(0).generate();
+		stepAnalyser = new StepAnalyser(Section.withoutGeometry());
+		stepAnalyser.analyse(new ByteArrayInputStream(data));
+		encoded = encode();
+		System.out.println(outputFormat + " " + nrOfMaterials + " materials: " + encoded.length + " bytes");
+	}
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder();
+		try (JsonGenerator generator = outputFormat.createGenerator(byteArrayBuilder)) {
+			stepAnalyser.write(generator);
+		}
+		return byteArrayBuilder.toByteArray();
+	}
+
+	@Benchmark
+	public JsonNode decodeTree() throws IOException {
+		return outputFormat.getObjectMapper().readTree(encoded);
+	}
+
+	@Benchmark
+	public long decodeStream() throws IOException {
+		long tokens = 0;
+		try (JsonParser parser = outputFormat.getObjectMapper().getFactory().createParser(encoded)) {
+			while (parser.nextToken() != null) {
+				tokens++;
+			}
+		}
+		return tokens;
+	}
+}
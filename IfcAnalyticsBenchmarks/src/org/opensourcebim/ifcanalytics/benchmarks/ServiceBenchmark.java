@@ -0,0 +1,89 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bimserver.bimbots.BimBotsException;
+import org.bimserver.bimbots.BimBotsInput;
+import org.bimserver.models.store.LongType;
+import org.bimserver.models.store.ObjectType;
+import org.bimserver.models.store.Parameter;
+import org.bimserver.models.store.StoreFactory;
+import org.bimserver.models.store.StringType;
+import org.bimserver.models.store.Type;
+import org.bimserver.plugins.PluginConfiguration;
+import org.bimserver.plugins.SchemaName;
+import org.opensourcebim.ifcanalytics.IfcAnalyticsService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole run of the model service through runBimBot, for all sections and for each section on its own, so the header
+ * and the project rollup are measured as well as the product pass
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx16g" })
+public class ServiceBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	private int nrOfObjects;
+
+	@Param({ "1", "4" })
+	private long parallelism;
+
+	@Param({ "all", "header", "project", "materials", "classifications", "aggregations", "checks" })
+	private String sections;
+
+	private final IfcAnalyticsService service = new IfcAnalyticsService();
+	private BimBotsInput input;
+	private PluginConfiguration pluginConfiguration;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		input = new BimBotsInput(SchemaName.IFC_STEP_2X3TC1, new byte[0]);
+		input.setIfcModel(new SyntheticModelGenerator().setNrOfObjects(nrOfObjects).generate());
+
+		ObjectType settings = StoreFactory.eINSTANCE.createObjectType();
+		LongType parallelismValue = StoreFactory.eINSTANCE.createLongType();
+		parallelismValue.setValue(parallelism);
+		settings.getParameters().add(parameter("parallelism", parallelismValue));
+		if (!sections.equals("all")) {
+			StringType sectionsValue = StoreFactory.eINSTANCE.createStringType();
+			sectionsValue.setValue(sections);
+			settings.getParameters().add(parameter("sections", sectionsValue));
+		}
+		pluginConfiguration = new PluginConfiguration(settings);
+	}
+
+	@TearDown(Level.Trial)
+	public void shutdown() {
+		service.shutdown();
+	}
+
+	@Benchmark
+	public byte[] runBimBot() throws BimBotsException {
+		return service.runBimBot(input, null, pluginConfiguration).getData();
+	}
+
+	private static Parameter parameter(String identifier, Type value) {
+		Parameter parameter = StoreFactory.eINSTANCE.createParameter();
+		parameter.setIdentifier(identifier);
+		parameter.setName(identifier);
+		parameter.setValue(value);
+		return parameter;
+	}
+}
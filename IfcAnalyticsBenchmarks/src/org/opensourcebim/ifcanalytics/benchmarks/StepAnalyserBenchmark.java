@@ -0,0 +1,73 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.opensourcebim.ifcanalytics.Section;
+import org.opensourcebim.ifcanalytics.StepAnalyser;
+import org.opensourcebim.ifcanalytics.StepReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The streaming service on a synthetic IFC file: tokenizing the file alone, and the whole analysis including writing
+ * the result
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx8g" })
+public class StepAnalyserBenchmark {
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	@Param({ "10000", "100000", "1000000" })
+	private int nrOfObjects;
+
+	private byte[] data;
+
+	@Setup(Level.Trial)
+	public void generate() {
+		data = new SyntheticIfcGenerator().setNrOfObjects(nrOfObjects).generate();
+	}
+
+	@Benchmark
+	public long read() throws IOException {
+		long sum = 0;
+		try (StepReader reader = new StepReader(new ByteArrayInputStream(data))) {
+			while (reader.next()) {
+				sum += reader.getId();
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public byte[] analyse() throws IOException {
+		StepAnalyser stepAnalyser = new StepAnalyser(Section.withoutGeometry());
+		stepAnalyser.analyse(new ByteArrayInputStream(data));
+		ByteArrayBuilder byteArrayBuilder = new ByteArrayBuilder();
+		try (JsonGenerator generator = OBJECT_MAPPER.getFactory().createGenerator(byteArrayBuilder, JsonEncoding.UTF8)) {
+			stepAnalyser.write(generator);
+		}
+		return byteArrayBuilder.toByteArray();
+	}
+}
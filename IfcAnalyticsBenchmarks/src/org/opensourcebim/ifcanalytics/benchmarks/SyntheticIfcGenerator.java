@@ -0,0 +1,233 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Writes a deterministic IFC2x3 STEP file. The same settings and seed always give the same bytes.
+ */
+public class SyntheticIfcGenerator {
+
+	private static final char[] GUID_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz_$".toCharArray();
+
+	private int nrOfObjects = 10000;
+	private String[] productTypes = { "IFCWALLSTANDARDCASE", "IFCSLAB", "IFCDOOR", "IFCWINDOW", "IFCBEAM", "IFCCOLUMN", "IFCFURNISHINGELEMENT", "IFCFLOWSEGMENT" };
+	private int[] productTypeWeights = { 30, 10, 10, 15, 10, 10, 10, 5 };
+	private int psetsPerObject = 3;
+	private int propertiesPerPset = 6;
+	private int objectsPerPset = 10;
+	private int nrOfMaterials = 25;
+	private int objectsPerMaterialRelation = 50;
+	private int nrOfClassificationReferences = 100;
+	private int objectsPerClassificationRelation = 20;
+	private int pointsPerObject = 8;
+	private long seed = 1;
+
+	private long nextId;
+
+	public SyntheticIfcGenerator setNrOfObjects(int nrOfObjects) {
+		this.nrOfObjects = nrOfObjects;
+		return this;
+	}
+
+	/**
+	 * @param productTypes Upper case STEP type names
+	 * @param productTypeWeights Relative frequency of each type
+	 */
+	public SyntheticIfcGenerator setTypeMix(String[] productTypes, int[] productTypeWeights) {
+		if (productTypes.length != productTypeWeights.length) {
+			throw new IllegalArgumentException("Every product type needs a weight");
+		}
+		this.productTypes = productTypes;
+		this.productTypeWeights = productTypeWeights;
+		return this;
+	}
+
+	public SyntheticIfcGenerator setPsetDensity(int psetsPerObject, int propertiesPerPset, int objectsPerPset) {
+		this.psetsPerObject = psetsPerObject;
+		this.propertiesPerPset = propertiesPerPset;
+		this.objectsPerPset = objectsPerPset;
+		return this;
+	}
+
+	public SyntheticIfcGenerator setMaterialFanOut(int nrOfMaterials, int objectsPerMaterialRelation) {
+		this.nrOfMaterials = nrOfMaterials;
+		this.objectsPerMaterialRelation = objectsPerMaterialRelation;
+		return this;
+	}
+
+	public SyntheticIfcGenerator setClassificationFanOut(int nrOfClassificationReferences, int objectsPerClassificationRelation) {
+		this.nrOfClassificationReferences = nrOfClassificationReferences;
+		this.objectsPerClassificationRelation = objectsPerClassificationRelation;
+		return this;
+	}
+
+	/**
+	 * @param pointsPerObject Number of IfcCartesianPoints in the body polyline of every object, below 2 there is no representation
+	 */
+	public SyntheticIfcGenerator setGeometrySize(int pointsPerObject) {
+		this.pointsPerObject = pointsPerObject;
+		return this;
+	}
+
+	public SyntheticIfcGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public byte[] generate() {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			write(outputStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return outputStream.toByteArray();
+	}
+
+	public void write(OutputStream outputStream) throws IOException {
+		Random random = new Random(seed);
+		nextId = 1;
+		Writer writer = new OutputStreamWriter(outputStream, StandardCharsets.US_ASCII);
+		writer.write("ISO-10303-21;\nHEADER;\n");
+		writer.write("FILE_DESCRIPTION(('ViewDefinition [CoordinationView]'),'2;1');\n");
+		writer.write("FILE_NAME('synthetic.ifc','2020-01-01T00:00:00',('IfcAnalytics'),('OpenSource BIM'),'SyntheticIfcGenerator','SyntheticIfcGenerator','');\n");
+		writer.write("FILE_SCHEMA(('IFC2X3'));\nENDSEC;\nDATA;\n");
+
+		long person = entity(writer, "IFCPERSON($,'Synthetic',$,$,$,$,$,$)");
+		long organization = entity(writer, "IFCORGANIZATION($,'OpenSource BIM',$,$,$)");
+		long personAndOrganization = entity(writer, "IFCPERSONANDORGANIZATION(#" + person + ",#" + organization + ",$)");
+		long application = entity(writer, "IFCAPPLICATION(#" + organization + ",'1','SyntheticIfcGenerator','SyntheticIfcGenerator')");
+		long ownerHistory = entity(writer, "IFCOWNERHISTORY(#" + personAndOrganization + ",#" + application + ",$,.ADDED.,$,$,$,1577836800)");
+		long origin = entity(writer, "IFCCARTESIANPOINT((0.,0.,0.))");
+		long worldCoordinateSystem = entity(writer, "IFCAXIS2PLACEMENT3D(#" + origin + ",$,$)");
+		long context = entity(writer, "IFCGEOMETRICREPRESENTATIONCONTEXT($,'Model',3,1.E-05,#" + worldCoordinateSystem + ",$)");
+		long lengthUnit = entity(writer, "IFCSIUNIT(*,.LENGTHUNIT.,$,.METRE.)");
+		long areaUnit = entity(writer, "IFCSIUNIT(*,.AREAUNIT.,$,.SQUARE_METRE.)");
+		long volumeUnit = entity(writer, "IFCSIUNIT(*,.VOLUMEUNIT.,$,.CUBIC_METRE.)");
+		long units = entity(writer, "IFCUNITASSIGNMENT((#" + lengthUnit + ",#" + areaUnit + ",#" + volumeUnit + "))");
+		long project = entity(writer, "IFCPROJECT('" + guid(random) + "',#" + ownerHistory + ",'Project',$,$,$,$,(#" + context + "),#" + units + ")");
+		long storey = entity(writer, "IFCBUILDINGSTOREY('" + guid(random) + "',#" + ownerHistory + ",'Storey',$,$,$,$,$,.ELEMENT.,0.)");
+		entity(writer, "IFCRELAGGREGATES('" + guid(random) + "',#" + ownerHistory + ",$,$,#" + project + ",(#" + storey + "))");
+
+		long[] materials = new long[nrOfMaterials];
+		for (int i = 0; i < nrOfMaterials; i++) {
+			materials[i] = entity(writer, "IFCMATERIAL('Material " + i + "')");
+		}
+		long classification = entity(writer, "IFCCLASSIFICATION('Synthetic','1',$,'Synthetic classification')");
+		long[] classificationReferences = new long[nrOfClassificationReferences];
+		for (int i = 0; i < nrOfClassificationReferences; i++) {
+			classificationReferences[i] = entity(writer, "IFCCLASSIFICATIONREFERENCE($,'" + i + "','Reference " + i + "',#" + classification + ")");
+		}
+
+		int totalWeight = 0;
+		for (int weight : productTypeWeights) {
+			totalWeight += weight;
+		}
+		long[] objects = new long[nrOfObjects];
+		for (int i = 0; i < nrOfObjects; i++) {
+			StringBuilder points = new StringBuilder();
+			for (int p = 0; p < pointsPerObject; p++) {
+				long point = entity(writer, "IFCCARTESIANPOINT((" + random.nextInt(100000) / 100.0 + "," + random.nextInt(100000) / 100.0 + "," + random.nextInt(10000) / 100.0 + "))");
+				points.append(p == 0 ? "#" : ",#").append(point);
+			}
+			long representation = 0;
+			if (pointsPerObject > 1) {
+				long polyline = entity(writer, "IFCPOLYLINE((" + points + "))");
+				long shapeRepresentation = entity(writer, "IFCSHAPEREPRESENTATION(#" + context + ",'Body','Curve3D',(#" + polyline + "))");
+				representation = entity(writer, "IFCPRODUCTDEFINITIONSHAPE($,$,(#" + shapeRepresentation + "))");
+			}
+			String type = productTypes[pick(random.nextInt(Math.max(1, totalWeight)))];
+			objects[i] = entity(writer, type + "('" + guid(random) + "',#" + ownerHistory + ",'Object " + i + "',$,$,$," + (representation == 0 ? "$" : "#" + representation) + ",$" + extraAttributes(type) + ")");
+		}
+		entity(writer, "IFCRELCONTAINEDINSPATIALSTRUCTURE('" + guid(random) + "',#" + ownerHistory + ",$,$," + references(objects, 0, objects.length) + ",#" + storey + ")");
+
+		for (int set = 0; set < psetsPerObject; set++) {
+			for (int start = 0; start < nrOfObjects; start += Math.max(1, objectsPerPset)) {
+				StringBuilder properties = new StringBuilder();
+				for (int p = 0; p < propertiesPerPset; p++) {
+					long property = entity(writer, "IFCPROPERTYSINGLEVALUE('Property " + p + "',$,IFCLABEL('" + random.nextInt(1000) + "'),$)");
+					properties.append(p == 0 ? "#" : ",#").append(property);
+				}
+				long pset = entity(writer, "IFCPROPERTYSET('" + guid(random) + "',#" + ownerHistory + ",'Pset " + set + "',$,(" + properties + "))");
+				entity(writer, "IFCRELDEFINESBYPROPERTIES('" + guid(random) + "',#" + ownerHistory + ",$,$," + references(objects, start, Math.min(nrOfObjects, start + Math.max(1, objectsPerPset))) + ",#" + pset + ")");
+			}
+		}
+
+		if (nrOfMaterials > 0) {
+			for (int start = 0; start < nrOfObjects; start += Math.max(1, objectsPerMaterialRelation)) {
+				long material = materials[random.nextInt(nrOfMaterials)];
+				entity(writer, "IFCRELASSOCIATESMATERIAL('" + guid(random) + "',#" + ownerHistory + ",$,$," + references(objects, start, Math.min(nrOfObjects, start + Math.max(1, objectsPerMaterialRelation))) + ",#" + material + ")");
+			}
+		}
+		if (nrOfClassificationReferences > 0) {
+			for (int start = 0; start < nrOfObjects; start += Math.max(1, objectsPerClassificationRelation)) {
+				long classificationReference = classificationReferences[random.nextInt(nrOfClassificationReferences)];
+				entity(writer, "IFCRELASSOCIATESCLASSIFICATION('" + guid(random) + "',#" + ownerHistory + ",$,$," + references(objects, start, Math.min(nrOfObjects, start + Math.max(1, objectsPerClassificationRelation))) + ",#" + classificationReference + ")");
+			}
+		}
+
+		writer.write("ENDSEC;\nEND-ISO-10303-21;\n");
+		writer.flush();
+	}
+
+	/**
+	 * The attributes after Tag for the product types that have more than the 8 of IfcElement
+	 */
+	private static String extraAttributes(String type) {
+		switch (type) {
+		case "IFCSLAB":
+			return ",.FLOOR.";
+		case "IFCDOOR":
+			return ",2.1,0.9";
+		case "IFCWINDOW":
+			return ",1.2,1.";
+		default:
+			return "";
+		}
+	}
+
+	private int pick(int value) {
+		for (int i = 0; i < productTypeWeights.length; i++) {
+			value -= productTypeWeights[i];
+			if (value < 0) {
+				return i;
+			}
+		}
+		return productTypeWeights.length - 1;
+	}
+
+	private long entity(Writer writer, String entity) throws IOException {
+		long id = nextId++;
+		writer.write("#");
+		writer.write(Long.toString(id));
+		writer.write("=");
+		writer.write(entity);
+		writer.write(";\n");
+		return id;
+	}
+
+	private static String references(long[] ids, int from, int to) {
+		StringBuilder references = new StringBuilder("(");
+		for (int i = from; i < to; i++) {
+			references.append(i == from ? "#" : ",#").append(ids[i]);
+		}
+		return references.append(")").toString();
+	}
+
+	static String guid(Random random) {
+		char[] guid = new char[22];
+		// The first character only holds the 2 highest bits of the 128
+		guid[0] = GUID_CHARACTERS[random.nextInt(4)];
+		for (int i = 1; i < guid.length; i++) {
+			guid[i] = GUID_CHARACTERS[random.nextInt(GUID_CHARACTERS.length)];
+		}
+		return new String(guid);
+	}
+}
@@ -0,0 +1,298 @@
+package org.opensourcebim.ifcanalytics.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.bimserver.emf.IdEObject;
+import org.bimserver.emf.IfcModelInterface;
+import org.bimserver.emf.IfcModelInterfaceException;
+import org.bimserver.emf.PackageMetaData;
+import org.bimserver.emf.Schema;
+import org.bimserver.ifc.BasicIfcModel;
+import org.bimserver.models.geometry.Bounds;
+import org.bimserver.models.geometry.Buffer;
+import org.bimserver.models.geometry.GeometryData;
+import org.bimserver.models.geometry.GeometryFactory;
+import org.bimserver.models.geometry.GeometryInfo;
+import org.bimserver.models.geometry.Vector3f;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Factory;
+import org.bimserver.models.ifc2x3tc1.Ifc2x3tc1Package;
+import org.bimserver.models.ifc2x3tc1.IfcBuildingStorey;
+import org.bimserver.models.ifc2x3tc1.IfcClassification;
+import org.bimserver.models.ifc2x3tc1.IfcClassificationReference;
+import org.bimserver.models.ifc2x3tc1.IfcLabel;
+import org.bimserver.models.ifc2x3tc1.IfcMaterial;
+import org.bimserver.models.ifc2x3tc1.IfcProduct;
+import org.bimserver.models.ifc2x3tc1.IfcProject;
+import org.bimserver.models.ifc2x3tc1.IfcPropertySet;
+import org.bimserver.models.ifc2x3tc1.IfcPropertySingleValue;
+import org.bimserver.models.ifc2x3tc1.IfcRelAggregates;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesClassification;
+import org.bimserver.models.ifc2x3tc1.IfcRelAssociatesMaterial;
+import org.bimserver.models.ifc2x3tc1.IfcRelContainedInSpatialStructure;
+import org.bimserver.models.ifc2x3tc1.IfcRelDefinesByProperties;
+import org.bimserver.models.ifc2x3tc1.IfcSIUnit;
+import org.bimserver.models.ifc2x3tc1.IfcSIUnitName;
+import org.bimserver.models.ifc2x3tc1.IfcUnitAssignment;
+import org.bimserver.models.ifc2x3tc1.IfcUnitEnum;
+import org.bimserver.models.store.IfcHeader;
+import org.bimserver.models.store.StoreFactory;
+import org.eclipse.emf.ecore.EClass;
+
+/**
+ * Builds a deterministic IFC2x3 model in memory, with geometry, as BIMserver hands it to the service. The same settings
+ * and seed always give the same model.
+ */
+public class SyntheticModelGenerator {
+
+	private static final Ifc2x3tc1Factory FACTORY = Ifc2x3tc1Factory.eINSTANCE;
+
+	private int nrOfObjects = 10000;
+	private String[] productTypes = { "IfcWallStandardCase", "IfcSlab", "IfcDoor", "IfcWindow", "IfcBeam", "IfcColumn", "IfcFurnishingElement", "IfcFlowSegment" };
+	private int[] productTypeWeights = { 30, 10, 10, 15, 10, 10, 10, 5 };
+	private int psetsPerObject = 3;
+	private int propertiesPerPset = 6;
+	private int objectsPerPset = 10;
+	private int nrOfMaterials = 25;
+	private int objectsPerMaterialRelation = 50;
+	private int nrOfClassificationReferences = 100;
+	private int objectsPerClassificationRelation = 20;
+	private int verticesPerObject = 24;
+	private long seed = 1;
+
+	private long nextOid;
+
+	public SyntheticModelGenerator setNrOfObjects(int nrOfObjects) {
+		this.nrOfObjects = nrOfObjects;
+		return this;
+	}
+
+	/**
+	 * @param productTypes IFC2x3 class names
+	 * @param productTypeWeights Relative frequency of each type
+	 */
+	public SyntheticModelGenerator setTypeMix(String[] productTypes, int[] productTypeWeights) {
+		if (productTypes.length != productTypeWeights.length) {
+			throw new IllegalArgumentException("Every product type needs a weight");
+		}
+		this.productTypes = productTypes;
+		this.productTypeWeights = productTypeWeights;
+		return this;
+	}
+
+	public SyntheticModelGenerator setPsetDensity(int psetsPerObject, int propertiesPerPset, int objectsPerPset) {
+		this.psetsPerObject = psetsPerObject;
+		this.propertiesPerPset = propertiesPerPset;
+		this.objectsPerPset = objectsPerPset;
+		return this;
+	}
+
+	public SyntheticModelGenerator setMaterialFanOut(int nrOfMaterials, int objectsPerMaterialRelation) {
+		this.nrOfMaterials = nrOfMaterials;
+		this.objectsPerMaterialRelation = objectsPerMaterialRelation;
+		return this;
+	}
+
+	public SyntheticModelGenerator setClassificationFanOut(int nrOfClassificationReferences, int objectsPerClassificationRelation) {
+		this.nrOfClassificationReferences = nrOfClassificationReferences;
+		this.objectsPerClassificationRelation = objectsPerClassificationRelation;
+		return this;
+	}
+
+	/**
+	 * @param verticesPerObject Number of vertices in the geometry data of every object, triangles are a third of that
+	 */
+	public SyntheticModelGenerator setGeometrySize(int verticesPerObject) {
+		this.verticesPerObject = verticesPerObject;
+		return this;
+	}
+
+	public SyntheticModelGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	public IfcModelInterface generate() {
+		Random random = new Random(seed);
+		nextOid = 1;
+		PackageMetaData packageMetaData = new PackageMetaData(Ifc2x3tc1Package.eINSTANCE, Schema.IFC2X3TC1, Paths.get(System.getProperty("java.io.tmpdir")));
+		BasicIfcModel model = new BasicIfcModel(packageMetaData, new HashMap<Integer, Long>());
+		IfcHeader ifcHeader = StoreFactory.eINSTANCE.createIfcHeader();
+		ifcHeader.setFilename("synthetic.ifc");
+		ifcHeader.setIfcSchemaVersion("IFC2X3");
+		ifcHeader.setTimeStamp(new Date(0));
+		ifcHeader.getAuthor().add("SyntheticModelGenerator");
+		model.getModelMetaData().setIfcHeader(ifcHeader);
+
+		IfcUnitAssignment units = add(model, FACTORY.createIfcUnitAssignment());
+		units.getUnits().add(unit(model, IfcUnitEnum.LENGTHUNIT, IfcSIUnitName.METRE));
+		units.getUnits().add(unit(model, IfcUnitEnum.AREAUNIT, IfcSIUnitName.SQUARE_METRE));
+		units.getUnits().add(unit(model, IfcUnitEnum.VOLUMEUNIT, IfcSIUnitName.CUBIC_METRE));
+		IfcProject project = add(model, FACTORY.createIfcProject());
+		project.setGlobalId(SyntheticIfcGenerator.guid(random));
+		project.setName("Project");
+		project.setUnitsInContext(units);
+		IfcBuildingStorey storey = add(model, FACTORY.createIfcBuildingStorey());
+		storey.setGlobalId(SyntheticIfcGenerator.guid(random));
+		storey.setName("Storey");
+		IfcRelAggregates ifcRelAggregates = add(model, FACTORY.createIfcRelAggregates());
+		ifcRelAggregates.setGlobalId(SyntheticIfcGenerator.guid(random));
+		ifcRelAggregates.setRelatingObject(project);
+		ifcRelAggregates.getRelatedObjects().add(storey);
+
+		IfcMaterial[] materials = new IfcMaterial[nrOfMaterials];
+		for (int i = 0; i < nrOfMaterials; i++) {
+			materials[i] = add(model, FACTORY.createIfcMaterial());
+			materials[i].setName("Material " + i);
+		}
+		IfcClassification classification = add(model, FACTORY.createIfcClassification());
+		classification.setSource("Synthetic");
+		classification.setEdition("1");
+		classification.setName("Synthetic classification");
+		IfcClassificationReference[] classificationReferences = new IfcClassificationReference[nrOfClassificationReferences];
+		for (int i = 0; i < nrOfClassificationReferences; i++) {
+			classificationReferences[i] = add(model, FACTORY.createIfcClassificationReference());
+			classificationReferences[i].setItemReference(Integer.toString(i));
+			classificationReferences[i].setName("Reference " + i);
+			classificationReferences[i].setReferencedSource(classification);
+		}
+
+		EClass[] productClasses = new EClass[productTypes.length];
+		for (int i = 0; i < productTypes.length; i++) {
+			productClasses[i] = packageMetaData.getEClass(productTypes[i]);
+		}
+		int totalWeight = 0;
+		for (int weight : productTypeWeights) {
+			totalWeight += weight;
+		}
+		IfcProduct[] objects = new IfcProduct[nrOfObjects];
+		IfcRelContainedInSpatialStructure containment = add(model, FACTORY.createIfcRelContainedInSpatialStructure());
+		containment.setGlobalId(SyntheticIfcGenerator.guid(random));
+		containment.setRelatingStructure(storey);
+		for (int i = 0; i < nrOfObjects; i++) {
+			IfcProduct product = add(model, (IfcProduct) FACTORY.create(productClasses[pick(random.nextInt(Math.max(1, totalWeight)))]));
+			product.setGlobalId(SyntheticIfcGenerator.guid(random));
+			product.setName("Object " + i);
+			if (verticesPerObject > 0) {
+				product.setGeometry(geometry(model, random));
+			}
+			containment.getRelatedElements().add(product);
+			objects[i] = product;
+		}
+
+		for (int set = 0; set < psetsPerObject; set++) {
+			for (int start = 0; start < nrOfObjects; start += Math.max(1, objectsPerPset)) {
+				IfcPropertySet pset = add(model, FACTORY.createIfcPropertySet());
+				pset.setGlobalId(SyntheticIfcGenerator.guid(random));
+				pset.setName("Pset " + set);
+				for (int p = 0; p < propertiesPerPset; p++) {
+					IfcLabel value = FACTORY.createIfcLabel();
+					value.setWrappedValue(Integer.toString(random.nextInt(1000)));
+					IfcPropertySingleValue property = add(model, FACTORY.createIfcPropertySingleValue());
+					property.setName("Property " + p);
+					property.setNominalValue(value);
+					pset.getHasProperties().add(property);
+				}
+				IfcRelDefinesByProperties ifcRelDefinesByProperties = add(model, FACTORY.createIfcRelDefinesByProperties());
+				ifcRelDefinesByProperties.setGlobalId(SyntheticIfcGenerator.guid(random));
+				ifcRelDefinesByProperties.setRelatingPropertyDefinition(pset);
+				for (int i = start; i < Math.min(nrOfObjects, start + Math.max(1, objectsPerPset)); i++) {
+					ifcRelDefinesByProperties.getRelatedObjects().add(objects[i]);
+				}
+			}
+		}
+
+		if (nrOfMaterials > 0) {
+			for (int start = 0; start < nrOfObjects; start += Math.max(1, objectsPerMaterialRelation)) {
+				IfcRelAssociatesMaterial ifcRelAssociatesMaterial = add(model, FACTORY.createIfcRelAssociatesMaterial());
+				ifcRelAssociatesMaterial.setGlobalId(SyntheticIfcGenerator.guid(random));
+				ifcRelAssociatesMaterial.setRelatingMaterial(materials[random.nextInt(nrOfMaterials)]);
+				for (int i = start; i < Math.min(nrOfObjects, start + Math.max(1, objectsPerMaterialRelation)); i++) {
+					ifcRelAssociatesMaterial.getRelatedObjects().add(objects[i]);
+				}
+			}
+		}
+		if (nrOfClassificationReferences > 0) {
+			for (int start = 0; start < nrOfObjects; start += Math.max(1, objectsPerClassificationRelation)) {
+				IfcRelAssociatesClassification ifcRelAssociatesClassification = add(model, FACTORY.createIfcRelAssociatesClassification());
+				ifcRelAssociatesClassification.setGlobalId(SyntheticIfcGenerator.guid(random));
+				ifcRelAssociatesClassification.setRelatingClassification(classificationReferences[random.nextInt(nrOfClassificationReferences)]);
+				for (int i = start; i < Math.min(nrOfObjects, start + Math.max(1, objectsPerClassificationRelation)); i++) {
+					ifcRelAssociatesClassification.getRelatedObjects().add(objects[i]);
+				}
+			}
+		}
+		return model;
+	}
+
+	private IfcSIUnit unit(BasicIfcModel model, IfcUnitEnum unitType, IfcSIUnitName name) {
+		IfcSIUnit unit = add(model, FACTORY.createIfcSIUnit());
+		unit.setUnitType(unitType);
+		unit.setName(name);
+		return unit;
+	}
+
+	/**
+	 * A box somewhere on a 1 km site, in millimeters, with random big endian float vertices inside it
+	 */
+	private GeometryInfo geometry(BasicIfcModel model, Random random) {
+		float minX = random.nextInt(1000000);
+		float minY = random.nextInt(1000000);
+		float minZ = random.nextInt(100000);
+		float sizeX = 100 + random.nextInt(10000);
+		float sizeY = 100 + random.nextInt(10000);
+		float sizeZ = 100 + random.nextInt(3000);
+
+		Bounds bounds = GeometryFactory.eINSTANCE.createBounds();
+		bounds.setMin(vector(minX, minY, minZ));
+		bounds.setMax(vector(minX + sizeX, minY + sizeY, minZ + sizeZ));
+		ByteBuffer vertices = ByteBuffer.allocate(verticesPerObject * 3 * 4);
+		for (int i = 0; i < verticesPerObject; i++) {
+			vertices.putFloat(minX + random.nextFloat() * sizeX);
+			vertices.putFloat(minY + random.nextFloat() * sizeY);
+			vertices.putFloat(minZ + random.nextFloat() * sizeZ);
+		}
+		Buffer buffer = GeometryFactory.eINSTANCE.createBuffer();
+		buffer.setData(vertices.array());
+		GeometryData data = GeometryFactory.eINSTANCE.createGeometryData();
+		data.setVertices(buffer);
+
+		GeometryInfo geometryInfo = add(model, GeometryFactory.eINSTANCE.createGeometryInfo());
+		geometryInfo.setBoundsMm(bounds);
+		geometryInfo.setPrimitiveCount(verticesPerObject / 3);
+		geometryInfo.setArea(2 * (sizeX * sizeY + sizeX * sizeZ + sizeY * sizeZ) / 1000000);
+		geometryInfo.setVolume(sizeX * sizeY * sizeZ / 1000000000);
+		geometryInfo.setData(data);
+		return geometryInfo;
+	}
+
+	private static Vector3f vector(double x, double y, double z) {
+		Vector3f vector = GeometryFactory.eINSTANCE.createVector3f();
+		vector.setX(x);
+		vector.setY(y);
+		vector.setZ(z);
+		return vector;
+	}
+
+	private <T extends IdEObject> T add(BasicIfcModel model, T object) {
+		try {
+			model.add(nextOid++, object);
+		} catch (IfcModelInterfaceException e) {
+			throw new RuntimeException(e);
+		}
+		return object;
+	}
+
+	private int pick(int value) {
+		for (int i = 0; i < productTypeWeights.length; i++) {
+			value -= productTypeWeights[i];
+			if (value < 0) {
+				return i;
+			}
+		}
+		return productTypeWeights.length - 1;
+	}
+}